@@ -0,0 +1,220 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streams text out of gzip files and zip archives without writing anything to
+ * disk. A {@code .txt.gz} file is indexed under its own path, and each
+ * {@code .txt} entry of a zip archive is indexed under a virtual path made of
+ * the archive path, {@code !/}, and the entry name.
+ *
+ * @author Jadon Huang
+ */
+public class ArchiveReader {
+	/** Separates the archive path from the entry name in a virtual path. */
+	public static final String SEPARATOR = "!/";
+
+	/** Size of the buffer in front of each decompressing stream. */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Something that reads a single text entry of an archive.
+	 */
+	@FunctionalInterface
+	public static interface EntryReader {
+		/**
+		 * Reads the text of an entry.
+		 *
+		 * @param location the virtual path of the entry
+		 * @param reader   the reader for the entry; closed by the caller
+		 * @throws IOException if unable to read the entry
+		 */
+		public void read(String location, BufferedReader reader) throws IOException;
+	}
+
+	/**
+	 * Checks if given path is a gzip compressed text file
+	 *
+	 * @param path the current path location
+	 * @return true/false if given path is a .txt.gz or .text.gz file
+	 */
+	public static boolean isGzip(Path path) {
+		String name = path.toString().toLowerCase();
+		return name.endsWith(".txt.gz") || name.endsWith(".text.gz");
+	}
+
+	/**
+	 * Checks if given path is a zip archive
+	 *
+	 * @param path the current path location
+	 * @return true/false if given path is a .zip file
+	 */
+	public static boolean isZip(Path path) {
+		return path.toString().toLowerCase().endsWith(".zip");
+	}
+
+	/**
+	 * Checks if the archive entry is a text file
+	 *
+	 * @param entry the archive entry
+	 * @return true/false if the entry is a .txt or .text file
+	 */
+	public static boolean isTextEntry(ZipEntry entry) {
+		String name = entry.getName().toLowerCase();
+		return !entry.isDirectory() && (name.endsWith(".txt") || name.endsWith(".text"));
+	}
+
+	/**
+	 * Returns the virtual path used for an entry of an archive.
+	 *
+	 * @param archive the archive path
+	 * @param entry   the archive entry
+	 * @return the virtual path of the entry
+	 */
+	public static String location(Path archive, ZipEntry entry) {
+		return archive.toString() + SEPARATOR + entry.getName();
+	}
+
+	/**
+	 * Creates a reader that decodes the stream as UTF-8 and, like
+	 * {@link Files#newBufferedReader(Path)}, reports malformed input instead of
+	 * replacing it.
+	 *
+	 * @param input the stream to decode
+	 * @return a buffered reader for the stream
+	 */
+	public static BufferedReader newReader(InputStream input) {
+		return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8.newDecoder()), BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a gzip compressed text file for reading.
+	 *
+	 * @param path the gzip file
+	 * @return a buffered reader of the decompressed text
+	 * @throws IOException if unable to open the file
+	 */
+	public static BufferedReader newGzipReader(Path path) throws IOException {
+		InputStream input = Files.newInputStream(path);
+		try {
+			return newReader(new GZIPInputStream(input, BUFFER_SIZE));
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Streams through a zip archive in order, reading each text entry.
+	 *
+	 * @param archive the zip archive
+	 * @param reader  reads each text entry
+	 * @throws IOException if unable to read the archive
+	 */
+	public static void forEachEntry(Path archive, EntryReader reader) throws IOException {
+		try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive), BUFFER_SIZE))) {
+			// the entry reader must not close the archive stream between entries
+			InputStream entry = new FilterInputStream(zip) {
+				@Override
+				public void close() {
+				}
+			};
+
+			ZipEntry next;
+			while ((next = zip.getNextEntry()) != null) {
+				if (isTextEntry(next)) {
+					reader.read(location(archive, next), newReader(entry));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a work queue task that opens a zip archive and adds a task for every
+	 * text entry, so the entries are decompressed and indexed in parallel. The
+	 * archive is opened on the work queue, so an archive that cannot be opened
+	 * fails its own task like any unreadable file instead of the whole crawl. The
+	 * archive is closed once the last entry is done.
+	 *
+	 * @param archive the zip archive
+	 * @param index   the index to add to
+	 * @param queuer  the work queue to execute the entries
+	 */
+	public static void submit(Path archive, ThreadedInvertedIndex index, TaskQueue queuer) {
+		queuer.execute(() -> {
+			try {
+				submitEntries(archive, index, queuer);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Opens a zip archive and adds a work queue task for every text entry.
+	 *
+	 * @param archive the zip archive
+	 * @param index   the index to add to
+	 * @param queuer  the work queue to execute the entries
+	 * @throws IOException if unable to open the archive
+	 */
+	private static void submitEntries(Path archive, ThreadedInvertedIndex index, TaskQueue queuer)
+			throws IOException {
+		ZipFile zip = new ZipFile(archive.toFile(), StandardCharsets.UTF_8);
+		List<ZipEntry> entries = new ArrayList<>();
+
+		for (ZipEntry entry : Collections.list(zip.entries())) {
+			if (isTextEntry(entry)) {
+				entries.add(entry);
+			}
+		}
+
+		if (entries.isEmpty()) {
+			zip.close();
+			return;
+		}
+
+		AtomicInteger remaining = new AtomicInteger(entries.size());
+
+		for (ZipEntry entry : entries) {
+			queuer.execute(() -> {
+				try (BufferedReader reader = newReader(zip.getInputStream(entry))) {
+					if (queuer.hasComputePool()) {
+						// blocking reads stay on this thread, stemming goes to the bounded pool
+						List<String> lines = DirectoryStreamer.readLines(reader);
+						queuer.compute(() -> DirectoryStreamer.stemLines(lines, location(archive, entry), index));
+					} else {
+						DirectoryStreamer.stemmer(reader, location(archive, entry), index);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				} finally {
+					if (remaining.decrementAndGet() == 0) {
+						try {
+							zip.close();
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				}
+			});
+		}
+	}
+}
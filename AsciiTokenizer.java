@@ -0,0 +1,246 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Splits a memory-mapped file into cleaned words by scanning its bytes
+ * directly. Runs of ASCII bytes are classified and lowercased with a lookup
+ * table built from the {@link WordCleaner} patterns. Only a line that contains
+ * a non-ASCII byte is decoded and passed through
+ * {@link WordCleaner#parse(String)}. The words are identical to parsing every
+ * line of the file with {@link WordCleaner#parse(String)}.
+ *
+ * @author Jadon Huang
+ */
+public class AsciiTokenizer {
+	/** Table entry for bytes that separate words. */
+	private static final char SPACE = 0;
+
+	/** Table entry for bytes that are removed from words. */
+	private static final char DROP = 1;
+
+	/** The number of bytes mapped at a time. */
+	private static final int WINDOW = 1 << 28;
+
+	/**
+	 * Lookup table for ASCII bytes holding {@link #SPACE}, {@link #DROP}, or the
+	 * lowercase letter to add to the current word.
+	 */
+	private static final char[] TABLE = new char[128];
+
+	static {
+		for (int b = 0; b < TABLE.length; b++) {
+			String text = String.valueOf((char) b);
+
+			if (WordCleaner.SPLIT_REGEX.matcher(text).matches()) {
+				TABLE[b] = SPACE;
+			} else if (WordCleaner.CLEAN_REGEX.matcher(text).matches()) {
+				TABLE[b] = DROP;
+			} else {
+				TABLE[b] = WordCleaner.clean(text).charAt(0);
+			}
+		}
+	}
+
+	/** The word being built. */
+	private char[] word;
+
+	/** Number of characters in the word being built. */
+	private int length;
+
+	/** Decodes the non-ASCII parts of lines, reporting malformed input. */
+	private final CharsetDecoder decoder;
+
+	/** Receives each word. */
+	private final Consumer<String> words;
+
+	/**
+	 * Creates a tokenizer that passes each word to the consumer.
+	 *
+	 * @param words receives each word in order
+	 */
+	private AsciiTokenizer(Consumer<String> words) {
+		this.word = new char[64];
+		this.length = 0;
+		this.decoder = StandardCharsets.UTF_8.newDecoder();
+		this.words = words;
+	}
+
+	/**
+	 * Memory-maps the file and passes each cleaned word to the consumer in order.
+	 *
+	 * @param file  the file to read
+	 * @param words receives each word in order
+	 * @throws IOException if unable to read the file or it is not valid UTF-8
+	 */
+	public static void tokenize(Path file, Consumer<String> words) throws IOException {
+		tokenize(file, words, null);
+	}
+
+	/**
+	 * Memory-maps the file and passes each cleaned word to the consumer in order,
+	 * adding every byte of the file to the digest as it is scanned.
+	 *
+	 * @param file   the file to read
+	 * @param words  receives each word in order
+	 * @param digest the digest to update with the bytes of the file, or null
+	 * @throws IOException if unable to read the file or it is not valid UTF-8
+	 */
+	public static void tokenize(Path file, Consumer<String> words, MessageDigest digest) throws IOException {
+		AsciiTokenizer tokenizer = new AsciiTokenizer(words);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long start = 0;
+			long window = WINDOW;
+
+			while (start < size) {
+				long length = Math.min(window, size - start);
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+				int end = (int) length;
+
+				if (start + length < size) {
+					// stop after the last line break so no line is split across windows
+					end = lastLineBreak(mapped, end) + 1;
+
+					if (end == 0 && window < Integer.MAX_VALUE) {
+						window = Math.min(Integer.MAX_VALUE, window * 2);
+						continue;
+					} else if (end == 0) {
+						end = (int) length;
+					}
+				}
+
+				if (digest != null) {
+					digest.update(mapped.slice(0, end));
+				}
+
+				tokenizer.scan(mapped, end);
+				start += end;
+				window = WINDOW;
+			}
+		}
+	}
+
+	/**
+	 * Passes each cleaned word of bytes already in memory to the consumer in
+	 * order.
+	 *
+	 * @param bytes the bytes to scan, from index 0 to the limit
+	 * @param words receives each word in order
+	 * @throws IOException if the bytes are not valid UTF-8
+	 */
+	public static void tokenize(ByteBuffer bytes, Consumer<String> words) throws IOException {
+		new AsciiTokenizer(words).scan(bytes, bytes.limit());
+	}
+
+	/**
+	 * Finds the last line feed or carriage return before the end.
+	 *
+	 * @param buffer the bytes to search
+	 * @param end    the index to search back from
+	 * @return the index of the last line break, or -1 if there is none
+	 */
+	private static int lastLineBreak(ByteBuffer buffer, int end) {
+		for (int i = end - 1; i >= 0; i--) {
+			byte b = buffer.get(i);
+			if (b == '\n' || b == '\r') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Scans whole lines of bytes, passing each word on. Lines made only of ASCII
+	 * bytes use the lookup table, and any other line is decoded and parsed.
+	 *
+	 * @param buffer the bytes to scan
+	 * @param end    the number of bytes to scan
+	 * @throws IOException if a line is not valid UTF-8
+	 */
+	private void scan(ByteBuffer buffer, int end) throws IOException {
+		int start = 0;
+
+		while (start < end) {
+			int stop = start;
+			boolean ascii = true;
+			byte b;
+
+			while (stop < end && (b = buffer.get(stop)) != '\n' && b != '\r') {
+				ascii &= b >= 0;
+				stop++;
+			}
+
+			if (ascii) {
+				ascii(buffer, start, stop);
+			} else {
+				unicode(buffer, start, stop);
+			}
+
+			start = stop + 1;
+		}
+	}
+
+	/**
+	 * Splits a line of ASCII bytes into words using the lookup table.
+	 *
+	 * @param buffer the bytes being scanned
+	 * @param start  the start of the line
+	 * @param stop   the end of the line
+	 */
+	private void ascii(ByteBuffer buffer, int start, int stop) {
+		for (int i = start; i < stop; i++) {
+			char c = TABLE[buffer.get(i)];
+
+			if (c == SPACE) {
+				emit();
+			} else if (c != DROP) {
+				if (length == word.length) {
+					word = Arrays.copyOf(word, length * 2);
+				}
+				word[length++] = c;
+			}
+		}
+
+		emit();
+	}
+
+	/**
+	 * Decodes a line and parses it with {@link WordCleaner#parse(String)}. The
+	 * whole line is parsed, since parsing trims the start of the line.
+	 *
+	 * @param buffer the bytes being scanned
+	 * @param start  the start of the line
+	 * @param stop   the end of the line
+	 * @throws IOException if the line is not valid UTF-8
+	 */
+	private void unicode(ByteBuffer buffer, int start, int stop) throws IOException {
+		ByteBuffer line = buffer.duplicate();
+		line.limit(stop).position(start);
+
+		for (String parsed : WordCleaner.parse(decoder.decode(line).toString())) {
+			words.accept(parsed);
+		}
+	}
+
+	/**
+	 * Passes on the word being built, if any, and starts a new one.
+	 */
+	private void emit() {
+		if (length > 0) {
+			words.accept(new String(word, 0, length));
+			length = 0;
+		}
+	}
+}
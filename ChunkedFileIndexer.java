@@ -0,0 +1,253 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indexes a single large file with several work queue tasks. The file is split
+ * at line breaks into chunks, each chunk is memory-mapped and stemmed by
+ * its own task, and the last task to finish adds the stems to the index with
+ * positions shifted by the number of stems in the chunks before it. The result
+ * is identical to {@link DirectoryStreamer#stemmer(Path, InvertedIndex)}.
+ *
+ * Splitting at a line feed or carriage return byte is safe because no
+ * multi-byte UTF-8 sequence contains such a byte, and each chunk then holds
+ * the same lines the original file would be read as. Splitting at other
+ * whitespace is not safe, since parsing a line only trims whitespace that
+ * {@link String#strip()} recognizes.
+ *
+ * @author Jadon Huang
+ */
+public class ChunkedFileIndexer {
+	/** The smallest chunk worth giving its own task. */
+	public static final long MIN_CHUNK = 1 << 20;
+
+	/** The largest chunk mapped and decoded at once. */
+	public static final long MAX_CHUNK = 64 << 20;
+
+	/** The number of bytes read at a time when looking for a chunk boundary. */
+	private static final int SCAN_SIZE = 4096;
+
+	/** The file being indexed. */
+	private final Path file;
+
+	/** The index to add the file to once every chunk is stemmed. */
+	private final ThreadedInvertedIndex index;
+
+	/** The start offset of each chunk, followed by the file size. */
+	private final long[] bounds;
+
+	/** The stems found in each chunk, in order. */
+	private final List<List<String>> stems;
+
+	/** The number of chunks that are not stemmed yet. */
+	private final AtomicInteger remaining;
+
+	/** The work queue running the chunk tasks. */
+	private final TaskQueue queuer;
+
+	/**
+	 * Creates an indexer for the file split at the given offsets.
+	 *
+	 * @param file   the file to index
+	 * @param index  the index to add to
+	 * @param bounds the start of each chunk followed by the file size
+	 * @param queuer the work queue running the chunk tasks
+	 */
+	private ChunkedFileIndexer(Path file, ThreadedInvertedIndex index, long[] bounds, TaskQueue queuer) {
+		int chunks = bounds.length - 1;
+
+		this.file = file;
+		this.index = index;
+		this.bounds = bounds;
+		this.stems = new ArrayList<>(chunks);
+		this.remaining = new AtomicInteger(chunks);
+		this.queuer = queuer;
+
+		for (int i = 0; i < chunks; i++) {
+			stems.add(null);
+		}
+	}
+
+	/**
+	 * Splits the file into chunks and adds a task for each chunk to the work
+	 * queue. The file is added to the index when the last chunk is done.
+	 *
+	 * @param file   the file to index
+	 * @param index  the index to add to
+	 * @param queuer the work queue to execute the chunks
+	 * @throws IOException if unable to read the file
+	 */
+	public static void submit(Path file, ThreadedInvertedIndex index, TaskQueue queuer) throws IOException {
+		long[] bounds;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / queuer.size() + 1));
+			bounds = split(channel, size, target);
+		}
+
+		ChunkedFileIndexer indexer = new ChunkedFileIndexer(file, index, bounds, queuer);
+
+		for (int i = 0; i < bounds.length - 1; i++) {
+			queuer.execute(indexer.new Task(i));
+		}
+	}
+
+	/**
+	 * Finds chunk boundaries roughly the target size apart. Every boundary is
+	 * placed just after a line break.
+	 *
+	 * @param channel the channel of the file to split
+	 * @param size    the size of the file
+	 * @param target  the preferred chunk size
+	 * @return the start of each chunk followed by the file size
+	 * @throws IOException if unable to read the file
+	 */
+	private static long[] split(FileChannel channel, long size, long target) throws IOException {
+		ArrayList<Long> starts = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+		long start = 0;
+
+		while (start < size) {
+			starts.add(start);
+			long next = start + target;
+
+			if (next >= size) {
+				break;
+			}
+
+			start = size;
+			while (next < size) {
+				buffer.clear();
+				int read = channel.read(buffer, next);
+				if (read <= 0) {
+					break;
+				}
+
+				int found = -1;
+				for (int i = 0; i < read && found < 0; i++) {
+					if (isLineBreak(buffer.get(i))) {
+						found = i;
+					}
+				}
+
+				if (found >= 0) {
+					start = next + found + 1;
+					break;
+				}
+				next += read;
+			}
+		}
+
+		long[] bounds = new long[starts.size() + 1];
+		for (int i = 0; i < starts.size(); i++) {
+			bounds[i] = starts.get(i);
+		}
+		bounds[starts.size()] = size;
+		return bounds;
+	}
+
+	/**
+	 * Determines whether the byte ends a line.
+	 *
+	 * @param b the byte to test
+	 * @return true if the byte is a line feed or carriage return
+	 */
+	public static boolean isLineBreak(byte b) {
+		return b == '\n' || b == '\r';
+	}
+
+	/**
+	 * Adds the stems of every chunk to the shared index in a single bulk call,
+	 * shifting each chunk by the number of stems before it.
+	 */
+	private void merge() {
+		int total = 0;
+		for (List<String> chunk : stems) {
+			total += chunk.size();
+		}
+
+		HashMap<String, List<Integer>> postings = new HashMap<>();
+		int position = 1;
+
+		for (List<String> chunk : stems) {
+			int offset = position;
+			for (int i = 0; i < chunk.size(); i++) {
+				postings.computeIfAbsent(chunk.get(i), word -> new ArrayList<>()).add(offset + i);
+			}
+			position += chunk.size();
+		}
+
+		if (total > 0) {
+			index.addPostings(postings, file.toString(), total);
+		}
+	}
+
+	/**
+	 * Task that maps, decodes, and stems a single chunk of the file.
+	 */
+	private class Task implements Runnable {
+		/** The chunk number. */
+		private final int chunk;
+
+		/**
+		 * Creates a task for the given chunk.
+		 *
+		 * @param chunk the chunk number
+		 */
+		public Task(int chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		public void run() {
+			queuer.compute(this::stem);
+		}
+
+		/**
+		 * Stems the chunk and merges the file if this was the last chunk.
+		 */
+		private void stem() {
+			long start = bounds[chunk];
+			long length = bounds[chunk + 1] - start;
+			ArrayList<String> list = new ArrayList<>();
+
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+				String text = StandardCharsets.UTF_8.newDecoder().decode(mapped).toString();
+				StemCache stemmer = StemCache.local();
+
+				Iterator<String> lines = text.lines().iterator();
+				while (lines.hasNext()) {
+					for (String word : WordCleaner.parse(lines.next())) {
+						list.add(stemmer.stem(word));
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			synchronized (stems) {
+				stems.set(chunk, list);
+			}
+
+			if (remaining.decrementAndGet() == 0) {
+				synchronized (stems) {
+					merge();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Opens output and input files, compressing or decompressing them with gzip
+ * when the file name ends in {@code .gz}. A gzip file may hold several
+ * independent members one after another, which is how chunks compressed on
+ * separate threads are joined into one file; readers see the members as one
+ * stream.
+ *
+ * @author Jadon Huang
+ */
+public class Compression {
+	/** Size of the buffers used for compressed and plain files. */
+	public static final int BUFFER_SIZE = 1 << 20;
+
+	/** The file name extension of gzip files. */
+	public static final String EXTENSION = ".gz";
+
+	/** Prevent instantiating this class of static methods. */
+	private Compression() {
+	}
+
+	/**
+	 * Returns whether the file should be gzip compressed.
+	 *
+	 * @param path the file path
+	 * @return true if the file name ends in {@code .gz}, ignoring case
+	 */
+	public static boolean isCompressed(Path path) {
+		Path name = path.getFileName();
+		return name != null && name.toString().toLowerCase(Locale.ROOT).endsWith(EXTENSION);
+	}
+
+	/**
+	 * Opens a buffered stream that replaces the file, compressing what is written
+	 * if the file name ends in {@code .gz}.
+	 *
+	 * @param path the file path
+	 * @return the output stream
+	 * @throws IOException if unable to open the file
+	 */
+	public static OutputStream newOutputStream(Path path) throws IOException {
+		OutputStream out = Files.newOutputStream(path);
+
+		if (isCompressed(path)) {
+			// the deflater writes its output in blocks of this size
+			return new GZIPOutputStream(out, BUFFER_SIZE);
+		}
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a stream that reads the file, decompressing every gzip member if the
+	 * file name ends in {@code .gz}.
+	 *
+	 * @param path the file path
+	 * @return the input stream
+	 * @throws IOException if unable to open the file
+	 */
+	public static InputStream newInputStream(Path path) throws IOException {
+		InputStream in = Files.newInputStream(path);
+
+		if (isCompressed(path)) {
+			try {
+				return new GZIPInputStream(in, BUFFER_SIZE);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Compresses the bytes into a single independent gzip member.
+	 *
+	 * @param bytes the bytes to compress
+	 * @return the gzip member
+	 */
+	public static byte[] gzip(byte[] bytes) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed, 1 << 16)) {
+			out.write(bytes);
+		} catch (IOException e) {
+			// a byte array stream does not throw
+			throw new IllegalStateException(e);
+		}
+		return compressed.toByteArray();
+	}
+}
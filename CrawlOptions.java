@@ -0,0 +1,187 @@
+package edu.usfca.cs272;
+
+/**
+ * Settings that control how the multithreaded directory streamer crawls and
+ * indexes files. The defaults match the original crawl: every text file is
+ * indexed by a single task in directory listing order.
+ *
+ * @author Jadon Huang
+ */
+public class CrawlOptions {
+	/**
+	 * Files of at least this many bytes are split into chunks indexed by separate
+	 * tasks. Zero disables splitting.
+	 */
+	private long chunkThreshold;
+
+	/**
+	 * Whether subdirectories are listed by work queue tasks instead of on the
+	 * calling thread.
+	 */
+	private boolean parallelWalk;
+
+	/**
+	 * Whether plain text files are memory-mapped and tokenized byte by byte with
+	 * an ASCII fast path.
+	 */
+	private boolean asciiFastPath;
+
+	/**
+	 * Whether files are collected with their sizes during the walk and indexed
+	 * largest first once the walk is done.
+	 */
+	private boolean largestFirst;
+
+	/**
+	 * When indexing largest first, files smaller than this many bytes are combined
+	 * into tasks of about this size. Zero disables batching.
+	 */
+	private long batchBytes;
+
+	/**
+	 * Reuses the stems of files with content that was already indexed, or null to
+	 * stem every file.
+	 */
+	private DedupCache dedupCache;
+
+	/**
+	 * Creates options with the default crawl settings.
+	 */
+	public CrawlOptions() {
+		this.chunkThreshold = 0;
+		this.parallelWalk = false;
+		this.asciiFastPath = false;
+		this.largestFirst = false;
+		this.batchBytes = 0;
+		this.dedupCache = null;
+	}
+
+	/**
+	 * Returns the size in bytes at which files are split into chunks.
+	 *
+	 * @return the chunk threshold, or 0 if files are never split
+	 */
+	public long getChunkThreshold() {
+		return chunkThreshold;
+	}
+
+	/**
+	 * Sets the size in bytes at which files are split into chunks.
+	 *
+	 * @param chunkThreshold the chunk threshold, or 0 to never split files
+	 */
+	public void setChunkThreshold(long chunkThreshold) {
+		this.chunkThreshold = Math.max(0, chunkThreshold);
+	}
+
+	/**
+	 * Determines whether a file of the given size should be split into chunks.
+	 *
+	 * @param size the file size in bytes
+	 * @return true if the file should be indexed in chunks
+	 */
+	public boolean isChunked(long size) {
+		return chunkThreshold > 0 && size >= chunkThreshold;
+	}
+
+	/**
+	 * Returns whether subdirectories are listed by work queue tasks.
+	 *
+	 * @return true if the directory walk is parallel
+	 */
+	public boolean isParallelWalk() {
+		return parallelWalk;
+	}
+
+	/**
+	 * Sets whether subdirectories are listed by work queue tasks.
+	 *
+	 * @param parallelWalk true to walk directories in parallel
+	 */
+	public void setParallelWalk(boolean parallelWalk) {
+		this.parallelWalk = parallelWalk;
+	}
+
+	/**
+	 * Returns whether plain text files are tokenized with the ASCII fast path.
+	 *
+	 * @return true if the ASCII fast path is used
+	 * @see AsciiTokenizer
+	 */
+	public boolean isAsciiFastPath() {
+		return asciiFastPath;
+	}
+
+	/**
+	 * Sets whether plain text files are tokenized with the ASCII fast path.
+	 *
+	 * @param asciiFastPath true to use the ASCII fast path
+	 * @see AsciiTokenizer
+	 */
+	public void setAsciiFastPath(boolean asciiFastPath) {
+		this.asciiFastPath = asciiFastPath;
+	}
+
+	/**
+	 * Returns whether files are indexed largest first once the walk is done.
+	 *
+	 * @return true if files are scheduled by size
+	 * @see CrawlSchedule
+	 */
+	public boolean isLargestFirst() {
+		return largestFirst;
+	}
+
+	/**
+	 * Sets whether files are indexed largest first once the walk is done.
+	 *
+	 * @param largestFirst true to schedule files by size
+	 * @see CrawlSchedule
+	 */
+	public void setLargestFirst(boolean largestFirst) {
+		this.largestFirst = largestFirst;
+	}
+
+	/**
+	 * Returns the size in bytes below which files are combined into batch tasks.
+	 *
+	 * @return the batch size, or 0 if files are never batched
+	 */
+	public long getBatchBytes() {
+		return batchBytes;
+	}
+
+	/**
+	 * Sets the size in bytes below which files are combined into batch tasks.
+	 * Only used when indexing largest first.
+	 *
+	 * @param batchBytes the batch size, or 0 to never batch files
+	 */
+	public void setBatchBytes(long batchBytes) {
+		this.batchBytes = Math.max(0, batchBytes);
+	}
+
+	/**
+	 * Returns the cache used to skip files with content that was already indexed.
+	 *
+	 * @return the dedup cache, or null if every file is stemmed
+	 */
+	public DedupCache getDedupCache() {
+		return dedupCache;
+	}
+
+	/**
+	 * Sets the cache used to skip files with content that was already indexed.
+	 *
+	 * @param dedupCache the dedup cache, or null to stem every file
+	 */
+	public void setDedupCache(DedupCache dedupCache) {
+		this.dedupCache = dedupCache;
+	}
+
+	@Override
+	public String toString() {
+		return "[chunkThreshold=" + chunkThreshold + ", parallelWalk=" + parallelWalk + ", asciiFastPath="
+				+ asciiFastPath + ", largestFirst=" + largestFirst + ", batchBytes=" + batchBytes + ", dedup=" + (dedupCache != null) + "]";
+	}
+}
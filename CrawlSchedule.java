@@ -0,0 +1,195 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the files found during a crawl along with their sizes, then adds
+ * them to the work queue largest first. Starting the longest work first keeps
+ * one huge file found late in the walk from running alone at the end of the
+ * crawl. Files smaller than the batch size are combined into tasks of about
+ * the batch size so tiny files do not each pay the cost of a task.
+ *
+ * @author Jadon Huang
+ */
+public class CrawlSchedule {
+	/**
+	 * Rough number of text bytes per compressed byte, used to weigh compressed
+	 * files against plain ones.
+	 */
+	public static final int COMPRESSION_RATIO = 4;
+
+	/** The files found so far. Safe to add to from several directory tasks. */
+	private final ConcurrentLinkedQueue<Entry> entries;
+
+	/** Files smaller than this many bytes are batched, or 0 to never batch. */
+	private final long batchBytes;
+
+	/**
+	 * Creates an empty schedule.
+	 *
+	 * @param batchBytes files smaller than this many bytes are combined into
+	 *                   tasks of about this size, or 0 to never batch
+	 */
+	public CrawlSchedule(long batchBytes) {
+		this.entries = new ConcurrentLinkedQueue<>();
+		this.batchBytes = Math.max(0, batchBytes);
+	}
+
+	/**
+	 * Adds a file to the schedule.
+	 *
+	 * @param path the file to index
+	 * @param size the file size in bytes
+	 */
+	public void add(Path path, long size) {
+		long weight = ArchiveReader.isGzip(path) || ArchiveReader.isZip(path) ? size * COMPRESSION_RATIO : size;
+		entries.add(new Entry(path, size, weight));
+	}
+
+	/**
+	 * Returns the number of files in the schedule.
+	 *
+	 * @return the number of files
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Adds the work for every file to the work queue, largest first. Files below
+	 * the batch size are grouped into batch tasks added after the larger files.
+	 *
+	 * @param submitter adds the work for a single file
+	 * @param queuer    the work queue to add the batches to
+	 * @throws IOException if unable to submit a file
+	 */
+	public void dispatch(Submitter submitter, TaskQueue queuer) throws IOException {
+		List<Entry> sorted = new ArrayList<>(entries);
+		entries.clear();
+		sorted.sort(Comparator.comparingLong((Entry entry) -> entry.weight).reversed());
+
+		List<Path> batch = new ArrayList<>();
+		long batched = 0;
+
+		for (Entry entry : sorted) {
+			if (entry.weight >= batchBytes) {
+				submitter.submit(entry.path, entry.size);
+				continue;
+			}
+
+			batch.add(entry.path);
+			batched += entry.weight;
+
+			if (batched >= batchBytes) {
+				queuer.execute(new Batch(batch, submitter));
+				batch = new ArrayList<>();
+				batched = 0;
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			queuer.execute(new Batch(batch, submitter));
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "[files=" + entries.size() + ", batchBytes=" + batchBytes + "]";
+	}
+
+	/**
+	 * Something that creates the work for a single file.
+	 */
+	public static interface Submitter {
+		/**
+		 * Adds the work needed to index the file to the work queue.
+		 *
+		 * @param path the file to index
+		 * @param size the file size in bytes
+		 * @throws IOException if unable to submit the file
+		 */
+		public void submit(Path path, long size) throws IOException;
+
+		/**
+		 * Creates the work that indexes the file on the calling thread. Used for
+		 * the files of a batch, which already run inside a single task.
+		 *
+		 * @param path the file to index
+		 * @return the work that indexes the file
+		 */
+		public Runnable task(Path path);
+	}
+
+	/**
+	 * A file found during the crawl.
+	 */
+	private static class Entry {
+		/** The file. */
+		private final Path path;
+
+		/** The file size in bytes. */
+		private final long size;
+
+		/** The estimated amount of work, in text bytes. */
+		private final long weight;
+
+		/**
+		 * Creates an entry.
+		 *
+		 * @param path   the file
+		 * @param size   the file size in bytes
+		 * @param weight the estimated amount of work
+		 */
+		private Entry(Path path, long size, long weight) {
+			this.path = path;
+			this.size = size;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * Task that indexes several small files one after another.
+	 */
+	private static class Batch implements Runnable {
+		/** The files to index. */
+		private final List<Path> paths;
+
+		/** Indexes each file. */
+		private final Submitter submitter;
+
+		/**
+		 * Creates a batch.
+		 *
+		 * @param paths     the files to index
+		 * @param submitter indexes each file
+		 */
+		private Batch(List<Path> paths, Submitter submitter) {
+			this.paths = paths;
+			this.submitter = submitter;
+		}
+
+		@Override
+		public void run() throws UncheckedIOException {
+			UncheckedIOException failure = null;
+
+			for (Path path : paths) {
+				try {
+					submitter.task(path).run();
+				} catch (UncheckedIOException e) {
+					// keep indexing the rest of the batch, like separate tasks would
+					failure = failure == null ? e : failure;
+				}
+			}
+
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package edu.usfca.cs272;
+
+/**
+ * Time budget for a single search. Long running loops call {@link #check()}
+ * now and then and stop early once it returns true, so a slow search gives up
+ * promptly with what it found so far. Once a check finds the deadline passed,
+ * {@link #isExpired()} stays true so the results can be marked as truncated.
+ *
+ * @author Jadon Huang
+ */
+public class Deadline {
+	/** A deadline that never passes. Safe to share, since it never expires. */
+	public static final Deadline NONE = new Deadline(Long.MAX_VALUE);
+
+	/** The time the budget runs out, from {@link System#nanoTime()}. */
+	private final long end;
+
+	/** Whether a check found the deadline passed. */
+	private volatile boolean expired;
+
+	/**
+	 * Creates a deadline at the given time.
+	 *
+	 * @param end the time the budget runs out, from {@link System#nanoTime()}, or
+	 *            {@link Long#MAX_VALUE} for no deadline
+	 */
+	private Deadline(long end) {
+		this.end = end;
+		this.expired = false;
+	}
+
+	/**
+	 * Creates a deadline the given number of milliseconds from now.
+	 *
+	 * @param millis the time budget in milliseconds, or 0 or less for no deadline
+	 * @return the deadline
+	 */
+	public static Deadline after(long millis) {
+		if (millis <= 0) {
+			return NONE;
+		}
+		return new Deadline(System.nanoTime() + millis * 1_000_000);
+	}
+
+	/**
+	 * Checks whether the deadline has passed.
+	 *
+	 * @return true if the search should stop
+	 */
+	public boolean check() {
+		if (expired) {
+			return true;
+		}
+
+		if (end != Long.MAX_VALUE && System.nanoTime() - end >= 0) {
+			expired = true;
+		}
+		return expired;
+	}
+
+	/**
+	 * Returns whether a check found the deadline passed.
+	 *
+	 * @return true if the search stopped early
+	 */
+	public boolean isExpired() {
+		return expired;
+	}
+
+	/**
+	 * Returns the time left before the deadline.
+	 *
+	 * @return the milliseconds left, or {@link Long#MAX_VALUE} if there is no
+	 *         deadline
+	 */
+	public long remaining() {
+		if (end == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, (end - System.nanoTime()) / 1_000_000);
+	}
+
+	@Override
+	public String toString() {
+		return end == Long.MAX_VALUE ? "[no deadline]" : "[" + remaining() + " ms left]";
+	}
+}
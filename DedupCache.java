@@ -0,0 +1,240 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Skips re-stemming files whose content was already indexed. Each file is
+ * hashed with SHA-256 while it is read, and the word count of its content is
+ * kept under that hash. The index is identical to stemming every file.
+ *
+ * A file of a size already seen is read into memory once and hashed. A match
+ * with cached positions is indexed from them, and anything else is stemmed from
+ * the bytes read, with its positions kept for later copies. Any other file, or
+ * a file larger than {@link #MAX_BUFFERED} bytes, is hashed while it is stemmed
+ * without keeping its positions, since no earlier file can match it; the first
+ * copy of it stems once more and keeps them. A gzip file is hashed on its
+ * compressed bytes.
+ *
+ * @author Jadon Huang
+ */
+public class DedupCache {
+	/** The hash algorithm used to compare file content. */
+	public static final String ALGORITHM = "SHA-256";
+
+	/** Largest file read into memory to check for a match before stemming. */
+	public static final int MAX_BUFFERED = 1 << 26;
+
+	/** The sizes of every file seen so far. */
+	private final Map<Long, Boolean> sizes;
+
+	/** The result of each content, keyed by content hash. */
+	private final Map<String, Result> results;
+
+	/** Number of files indexed from cached positions. */
+	private final LongAdder hits;
+
+	/** Number of files that had to be stemmed. */
+	private final LongAdder misses;
+
+	/**
+	 * Creates an empty cache.
+	 */
+	public DedupCache() {
+		this.sizes = new ConcurrentHashMap<>();
+		this.results = new ConcurrentHashMap<>();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Adds a plain or gzip compressed text file to the index, reusing the result
+	 * of an earlier file with the same content if there is one.
+	 *
+	 * @param file    the file to index
+	 * @param index   the index to add to
+	 * @param options the crawl settings
+	 * @throws IOException if unable to read the file
+	 */
+	public void stemmer(Path file, InvertedIndex index, CrawlOptions options) throws IOException {
+		long size = Files.size(file);
+		boolean gzip = ArchiveReader.isGzip(file);
+		boolean ascii = options.isAsciiFastPath() && !gzip;
+		MessageDigest hasher = newDigest();
+
+		if (sizes.putIfAbsent(size, Boolean.TRUE) == null || size > MAX_BUFFERED) {
+			// no file of the same size to match yet, so hash while stemming
+			List<String> stems;
+
+			if (ascii) {
+				stems = DirectoryStreamer.asciiStems(file, hasher);
+			} else {
+				try (InputStream input = new DigestInputStream(Files.newInputStream(file), hasher)) {
+					stems = stems(input, gzip);
+
+					// hash anything left after the end of the compressed text too
+					input.transferTo(OutputStream.nullOutputStream());
+				}
+			}
+
+			misses.increment();
+			if (!stems.isEmpty()) {
+				index.addPostings(InvertedIndex.groupPositions(stems, 1), file.toString(), stems.size());
+			}
+			results.putIfAbsent(HexFormat.of().formatHex(hasher.digest()), new Result(stems.size(), null));
+			return;
+		}
+
+		// another file has the same size, so read once and hash before stemming
+		add(file, Files.readAllBytes(file), true, index, options);
+	}
+
+	/**
+	 * Adds a plain or gzip compressed text file that was already read into memory
+	 * to the index, reusing the result of an earlier file with the same content if
+	 * there is one.
+	 *
+	 * @param file    the file the bytes were read from
+	 * @param bytes   the bytes of the file
+	 * @param index   the index to add to
+	 * @param options the crawl settings
+	 * @throws IOException if unable to decode or decompress the bytes
+	 */
+	public void stemmer(Path file, byte[] bytes, InvertedIndex index, CrawlOptions options) throws IOException {
+		boolean shared = sizes.putIfAbsent((long) bytes.length, Boolean.TRUE) != null;
+		add(file, bytes, shared, index, options);
+	}
+
+	/**
+	 * Adds the bytes of a file to the index from the cached positions of the same
+	 * content, or else by stemming them.
+	 *
+	 * @param file    the file the bytes were read from
+	 * @param bytes   the bytes of the file
+	 * @param shared  whether an earlier file has the same size, so the positions
+	 *                are worth keeping for later copies
+	 * @param index   the index to add to
+	 * @param options the crawl settings
+	 * @throws IOException if unable to decode or decompress the bytes
+	 */
+	private void add(Path file, byte[] bytes, boolean shared, InvertedIndex index, CrawlOptions options)
+			throws IOException {
+		String digest = HexFormat.of().formatHex(newDigest().digest(bytes));
+		Result result = results.get(digest);
+		Map<String, List<Integer>> postings = result == null ? null : result.postings;
+
+		if (postings != null) {
+			hits.increment();
+			if (result.count > 0) {
+				index.addPostings(postings, file.toString(), result.count);
+			}
+			return;
+		}
+
+		boolean gzip = ArchiveReader.isGzip(file);
+		List<String> stems = DirectoryStreamer.stems(bytes, gzip, options.isAsciiFastPath() && !gzip);
+
+		misses.increment();
+		postings = InvertedIndex.groupPositions(stems, 1);
+
+		if (!stems.isEmpty()) {
+			index.addPostings(postings, file.toString(), stems.size());
+		}
+
+		// a size shared with another file makes later copies likely, so keep the
+		// positions of this content for them
+		if (result == null) {
+			results.putIfAbsent(digest, new Result(stems.size(), shared ? postings : null));
+		} else if (shared) {
+			result.postings = postings;
+		}
+	}
+
+	/**
+	 * Stems a plain or gzip compressed stream of text.
+	 *
+	 * @param input the stream to read; not closed by this method
+	 * @param gzip  whether the stream is gzip compressed
+	 * @return the stems in order
+	 * @throws IOException if unable to read the stream
+	 */
+	private static List<String> stems(InputStream input, boolean gzip) throws IOException {
+		BufferedReader reader = ArchiveReader.newReader(gzip ? new GZIPInputStream(input, ArchiveReader.BUFFER_SIZE)
+				: input);
+		return DirectoryStreamer.stems(reader);
+	}
+
+	/**
+	 * Creates a new message digest for {@link #ALGORITHM}.
+	 *
+	 * @return the message digest
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of files indexed from a previous result.
+	 *
+	 * @return the number of duplicate files
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of files that had to be stemmed.
+	 *
+	 * @return the number of unique files
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Dedup cache: %d duplicate files, %d stemmed files, %d unique contents", hits(), misses(),
+				results.size());
+	}
+
+	/**
+	 * The number of stems of some content, and its positions once a file of the
+	 * same size is found.
+	 */
+	private static class Result {
+		/** The number of stems. */
+		private final int count;
+
+		/** The positions of each stem, or null if not kept yet. */
+		private volatile Map<String, List<Integer>> postings;
+
+		/**
+		 * Creates a result.
+		 *
+		 * @param count    the number of stems
+		 * @param postings the positions of each stem, or null to not keep them
+		 */
+		private Result(int count, Map<String, List<Integer>> postings) {
+			this.count = count;
+			this.postings = postings;
+		}
+	}
+}
@@ -1,14 +1,18 @@
 package edu.usfca.cs272;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 import java.nio.charset.StandardCharsets;
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 /**
  * DirectorySteamer recursively traverses all given paths and returns a list of
@@ -24,10 +28,24 @@ public class DirectoryStreamer {
 	 * @throws IOException to throw
 	 */
 	public static void processDirectory(Path directory, InvertedIndex index) throws IOException {
+		processDirectory(directory, index, new CrawlOptions());
+	}
+
+	/**
+	 * Traverses through the directory and its sub-directories using the given
+	 * crawl settings
+	 * 
+	 * @param directory the path to stream through
+	 * @param index     the Inverted Index class
+	 * @param options   the crawl settings
+	 * @throws IOException to throw
+	 */
+	public static void processDirectory(Path directory, InvertedIndex index, CrawlOptions options)
+			throws IOException {
 		if (Files.isDirectory(directory)) {
-			traverseDirectory(directory, index);
+			traverseDirectory(directory, index, options);
 		} else {
-			stemmer(directory, index);
+			stemmer(directory, index, options);
 		}
 	}
 
@@ -39,50 +57,264 @@ public class DirectoryStreamer {
 	 * @throws IOException thrown if traverseDirectory call invalid
 	 */
 	public static void traverseDirectory(Path directory, InvertedIndex index) throws IOException {
+		traverseDirectory(directory, index, new CrawlOptions());
+	}
+
+	/**
+	 * Recursively traverses through directory using the given crawl settings
+	 * 
+	 * @param directory the current file directory
+	 * @param index     the Inverted Index class
+	 * @param options   the crawl settings
+	 * @throws IOException thrown if traverseDirectory call invalid
+	 */
+	public static void traverseDirectory(Path directory, InvertedIndex index, CrawlOptions options)
+			throws IOException {
 		try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
 			for (Path files : listing) {
 				if (Files.isDirectory(files)) {
-					traverseDirectory(files, index);
+					traverseDirectory(files, index, options);
 				} else if (isTextFile(files)) {
-					stemmer(files, index);
+					stemmer(files, index, options);
 				}
 			}
 		}
 	}
 
 	/**
-	 * Checks if given path is a text file
+	 * Checks if given path is a text file, a gzip compressed text file, or a zip
+	 * archive that may contain text files
 	 * 
 	 * @param path the current path location
-	 * @return true/false if given path is a .txt .text file
+	 * @return true/false if given path is a .txt .text .txt.gz .text.gz or .zip
+	 *         file
 	 */
 	public static boolean isTextFile(Path path) {
-		return path.toString().toLowerCase().endsWith(".txt") || path.toString().toLowerCase().endsWith(".text");
+		return path.toString().toLowerCase().endsWith(".txt") || path.toString().toLowerCase().endsWith(".text")
+				|| ArchiveReader.isGzip(path) || ArchiveReader.isZip(path);
+	}
+
+	/**
+	 * Opens a text file, or a gzip compressed text file, for reading.
+	 * 
+	 * @param file the file to open
+	 * @return a buffered reader of the text
+	 * @throws IOException if unable to open the file
+	 */
+	public static BufferedReader newReader(Path file) throws IOException {
+		if (ArchiveReader.isGzip(file)) {
+			return ArchiveReader.newGzipReader(file);
+		}
+		return Files.newBufferedReader(file, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads every line of a text file, or a gzip compressed text file.
+	 * 
+	 * @param file the file to read
+	 * @return the lines of the file
+	 * @throws IOException if unable to read the file
+	 */
+	public static List<String> readLines(Path file) throws IOException {
+		try (BufferedReader reader = newReader(file)) {
+			return readLines(reader);
+		}
+	}
+
+	/**
+	 * Reads every line of a reader, such as one of a zip archive entry.
+	 * 
+	 * @param reader the reader of the text; not closed by this method
+	 * @return the lines of the text
+	 * @throws IOException if unable to read
+	 */
+	public static List<String> readLines(BufferedReader reader) throws IOException {
+		ArrayList<String> lines = new ArrayList<>();
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		return lines;
 	}
 	
 	/**
 	 * Stemmer to build the InvertedIndex data structure, calling a buffered reader
-	 * to read through each line of word, parsing every line, and adding each
-	 * default stemmed word, current path location, and current counter to the
-	 * inverted index data structure
+	 * to read through each line of word, parsing every line, and adding the
+	 * default stemmed words of the whole file and the current path location to
+	 * the inverted index data structure in one bulk call. Stems come from the stem
+	 * cache of the current thread. Gzip files are decompressed while reading, and
+	 * each text entry of a zip archive is added under its own virtual path.
 	 * 
 	 * @param file the parsed file path
 	 * @param index the Inverted Index class 
 	 * @throws IOException to throw
 	 */
 	public static void stemmer(Path file, InvertedIndex index) throws IOException {
-		Integer position = 1;
-		Stemmer stemmer = new SnowballStemmer(ENGLISH);
-		String location = file.toString();
-
-		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
-			String line = reader.readLine();
-			while (line != null) {
-				for (String word : WordCleaner.parse(line)) {
-					index.add(stemmer.stem(word).toString(), location, position++);
-				}
-				line = reader.readLine();
+		stemmer(file, index, new CrawlOptions());
+	}
+
+	/**
+	 * Stems a single file like {@link #stemmer(Path, InvertedIndex)}, using the
+	 * given crawl settings. With the ASCII fast path, plain text files are
+	 * memory-mapped and tokenized byte by byte instead of line by line.
+	 * 
+	 * @param file    the parsed file path
+	 * @param index   the Inverted Index class
+	 * @param options the crawl settings
+	 * @throws IOException to throw
+	 * @see AsciiTokenizer
+	 */
+	public static void stemmer(Path file, InvertedIndex index, CrawlOptions options) throws IOException {
+		if (options.getDedupCache() != null && !ArchiveReader.isZip(file)) {
+			options.getDedupCache().stemmer(file, index, options);
+			return;
+		}
+
+		if (options.isAsciiFastPath() && !ArchiveReader.isZip(file) && !ArchiveReader.isGzip(file)) {
+			index.addAll(asciiStems(file), file.toString(), 1);
+			return;
+		}
+
+		if (ArchiveReader.isZip(file)) {
+			ArchiveReader.forEachEntry(file, (location, reader) -> stemmer(reader, location, index));
+			return;
+		}
+
+		try (BufferedReader reader = newReader(file)) {
+			stemmer(reader, file.toString(), index);
+		}
+	}
+
+	/**
+	 * Stems a plain or gzip compressed text file that was already read into
+	 * memory, exactly as {@link #stemmer(Path, InvertedIndex, CrawlOptions)} would
+	 * for the same file. Lets a task read the file on its own thread and stem it
+	 * elsewhere.
+	 * 
+	 * @param file    the file the bytes were read from
+	 * @param bytes   the bytes of the file
+	 * @param index   the Inverted Index class
+	 * @param options the crawl settings
+	 * @throws IOException if unable to decode or decompress the bytes
+	 */
+	public static void stemmer(Path file, byte[] bytes, InvertedIndex index, CrawlOptions options)
+			throws IOException {
+		if (options.getDedupCache() != null) {
+			options.getDedupCache().stemmer(file, bytes, index, options);
+			return;
+		}
+
+		index.addAll(stems(bytes, ArchiveReader.isGzip(file), options.isAsciiFastPath()), file.toString(), 1);
+	}
+
+	/**
+	 * Stems every line of the reader and adds the stems to the inverted index
+	 * under the given location in one bulk call. Used for plain files as well as
+	 * for text streamed out of gzip files and zip archives.
+	 * 
+	 * @param reader   the reader of the text; not closed by this method
+	 * @param location the location to add the stems under
+	 * @param index    the Inverted Index class
+	 * @throws IOException if unable to read
+	 */
+	public static void stemmer(BufferedReader reader, String location, InvertedIndex index) throws IOException {
+		index.addAll(stems(reader), location, 1);
+	}
+
+	/**
+	 * Stems every line of the reader in order.
+	 * 
+	 * @param reader the reader of the text; not closed by this method
+	 * @return the stems of the text in order
+	 * @throws IOException if unable to read
+	 */
+	public static List<String> stems(BufferedReader reader) throws IOException {
+		ArrayList<String> stems = new ArrayList<>();
+		StemCache stemmer = StemCache.local();
+
+		String line = reader.readLine();
+		while (line != null) {
+			for (String word : WordCleaner.parse(line)) {
+				stems.add(stemmer.stem(word));
 			}
+			line = reader.readLine();
 		}
+		return stems;
+	}
+
+	/**
+	 * Stems the bytes of a plain or gzip compressed text file in order.
+	 * 
+	 * @param bytes the bytes of the file
+	 * @param gzip  whether the bytes are gzip compressed
+	 * @param ascii whether to use the ASCII fast path for plain text
+	 * @return the stems of the text in order
+	 * @throws IOException if unable to decode or decompress the bytes
+	 * @see AsciiTokenizer
+	 */
+	public static List<String> stems(byte[] bytes, boolean gzip, boolean ascii) throws IOException {
+		if (ascii && !gzip) {
+			ArrayList<String> stems = new ArrayList<>();
+			StemCache stemmer = StemCache.local();
+
+			AsciiTokenizer.tokenize(ByteBuffer.wrap(bytes), word -> stems.add(stemmer.stem(word)));
+			return stems;
+		}
+
+		InputStream input = new ByteArrayInputStream(bytes);
+		return stems(ArchiveReader.newReader(gzip ? new GZIPInputStream(input, ArchiveReader.BUFFER_SIZE) : input));
+	}
+
+	/**
+	 * Stems a plain text file in order using the ASCII fast path.
+	 * 
+	 * @param file the file to stem
+	 * @return the stems of the file in order
+	 * @throws IOException if unable to read the file
+	 * @see AsciiTokenizer
+	 */
+	public static List<String> asciiStems(Path file) throws IOException {
+		return asciiStems(file, null);
+	}
+
+	/**
+	 * Stems a plain text file in order using the ASCII fast path, adding the
+	 * bytes of the file to the digest as they are read.
+	 * 
+	 * @param file   the file to stem
+	 * @param digest the digest to update with the bytes of the file, or null
+	 * @return the stems of the file in order
+	 * @throws IOException if unable to read the file
+	 * @see AsciiTokenizer
+	 */
+	public static List<String> asciiStems(Path file, MessageDigest digest) throws IOException {
+		ArrayList<String> stems = new ArrayList<>();
+		StemCache stemmer = StemCache.local();
+
+		AsciiTokenizer.tokenize(file, word -> stems.add(stemmer.stem(word)), digest);
+		return stems;
+	}
+
+	/**
+	 * Stems lines that were already read from a file and adds each stem, the
+	 * location, and its position to the inverted index, exactly as
+	 * {@link #stemmer(Path, InvertedIndex)} would for the same file.
+	 * 
+	 * @param lines    the lines of the file in order
+	 * @param location the location to add the stems under
+	 * @param index    the Inverted Index class
+	 */
+	public static void stemLines(List<String> lines, String location, InvertedIndex index) {
+		ArrayList<String> stems = new ArrayList<>();
+		StemCache stemmer = StemCache.local();
+
+		for (String line : lines) {
+			for (String word : WordCleaner.parse(line)) {
+				stems.add(stemmer.stem(word));
+			}
+		}
+
+		index.addAll(stems, location, 1);
 	}
 }
\ No newline at end of file
@@ -2,6 +2,9 @@ package edu.usfca.cs272;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Class responsible for running this project based on the provided command-line
@@ -25,31 +28,105 @@ public class Driver {
 		InvertedIndex index = null;
 		ThreadedInvertedIndex multiThread = null;
 		QueryInterface query = null;
-		WorkQueue queuer = null;
+		TaskQueue queuer = null;
+		IngestionPipeline pipeline = null;
+		DedupCache dedup = null;
+		SpillingIndex spilling = null;
 		Integer threads = 5;
+		Integer getThread = threads;
+
+		if (argParse.hasFlag("-budget")) {
+			// megabytes of postings held in memory before spilling a sorted run to disk
+			long megabytes = argParse.getInteger("-budget", 256);
+			// runs go in a new directory inside -spilldir, or the temporary directory
+			spilling = new SpillingIndex(Math.max(1, megabytes) << 20, argParse.getPath("-spilldir"));
+		}
 
 		if (argParse.hasFlag("-threads")) {
 
 			// System.out.println(argParse);
-			Integer getThread = argParse.getInteger("-threads", threads);
+			getThread = argParse.getInteger("-threads", threads);
 			// System.out.println("num threads: " + getThread);
 
 			if (getThread <= 0) {
 				getThread = 5;
 			}
-			queuer = new WorkQueue(getThread);
-			multiThread = new ThreadedInvertedIndex();
+			if (argParse.hasFlag("-virtual")) {
+				// tasks on virtual threads, stemming and merging on getThread threads
+				queuer = new VirtualWorkQueue(getThread);
+			} else if (argParse.hasFlag("-stealing")) {
+				// a deque per worker thread, idle workers steal from the others
+				queuer = new StealingWorkQueue(getThread);
+			} else {
+				queuer = new WorkQueue(getThread);
+			}
+			multiThread = spilling != null ? spilling : new ThreadedInvertedIndex();
+
+			if (argParse.hasFlag("-intraquery")) {
+				// split the words of each search across a fork/join pool
+				multiThread.setSearchPool(new ForkJoinPool(Math.max(1, argParse.getInteger("-intraquery", getThread))));
+			}
 
-			query = new ThreadedQuery(multiThread, queuer);
+			ThreadedQuery threadedQuery = new ThreadedQuery(multiThread, queuer);
+
+			if (argParse.hasFlag("-querychunk")) {
+				// microseconds each chunk of query lines should take, 0 for one task per line
+				threadedQuery.setChunkTarget(argParse.getInteger("-querychunk", 1000) * 1000L);
+			}
+
+			query = threadedQuery;
 			index = multiThread;
 		} else {
-			index = new InvertedIndex();
+			index = spilling != null ? spilling : new InvertedIndex();
 			query = new QueryManager(index);
 			// System.out.println(query);
 		}
 
+		if (argParse.hasFlag("-expand")) {
+			// most words a partial search query expands to, keeping the most common
+			index.setExpansionLimit(argParse.getInteger("-expand", 0));
+		}
+
+		if (argParse.hasFlag("-timeout")) {
+			// milliseconds each search may take before returning what it found so far
+			index.setSearchTimeout(argParse.getInteger("-timeout", 0));
+		}
+
+		if (argParse.hasFlag("-load")) {
+			Path loadPath = argParse.getPath("-load");
+			// format of the files to load, json (default), ndjson, or binary
+			OutputFormat format = OutputFormat.of(argParse.getString("-loadformat"), OutputFormat.JSON);
+			try {
+				if (loadPath == null) {
+					System.out.println("Path is null: " + loadPath);
+				} else {
+					if (argParse.hasFlag("-loadcounts")) {
+						// word counts from the file instead of the highest position of each location
+						IndexLoader.loadCounts(argParse.getPath("-loadcounts", Path.of("counts.json")), index, format);
+					}
+
+					if (queuer != null) {
+						IndexLoader.loadIndex(loadPath, index, format, queuer);
+					} else {
+						IndexLoader.loadIndex(loadPath, index, format);
+					}
+				}
+			} catch (IOException e) {
+				System.out.println("Bad load path: " + argParse.toString());
+			}
+		}
+
 		if (argParse.hasFlag("-text")) {
 			Path argPath = argParse.getPath("-text");
+			CrawlOptions options = new CrawlOptions();
+			options.setAsciiFastPath(argParse.hasFlag("-ascii"));
+
+			if (argParse.hasFlag("-dedup")) {
+				// files with content that was already indexed reuse the earlier stems
+				dedup = new DedupCache();
+				options.setDedupCache(dedup);
+			}
+
 			try {
 				if (argPath == null) {
 					System.out.println("Path is null: " + argPath);
@@ -57,10 +134,29 @@ public class Driver {
 
 					if (queuer != null && multiThread != null) {
 						// System.out.println("thread flag");
-						ThreadedDirectoryStreamer.processDirectory(argPath, multiThread, queuer);
+						if (argParse.hasFlag("-chunk")) {
+							// threshold in megabytes for splitting a single file across tasks
+							long megabytes = argParse.getInteger("-chunk", 64);
+							options.setChunkThreshold(megabytes << 20);
+						}
+
+						options.setParallelWalk(argParse.hasFlag("-walk"));
+
+						if (argParse.hasFlag("-lpt")) {
+							// index the largest files first, batching files under this many kilobytes
+							options.setLargestFirst(true);
+							options.setBatchBytes((long) argParse.getInteger("-lpt", 0) << 10);
+						}
+
+						if (argParse.hasFlag("-pipeline")) {
+							pipeline = newPipeline(argParse.getString("-pipeline"), multiThread, getThread);
+							pipeline.processDirectory(argPath);
+						} else {
+							ThreadedDirectoryStreamer.processDirectory(argPath, multiThread, queuer, options);
+						}
 
 					} else {
-						DirectoryStreamer.processDirectory(argPath, index);
+						DirectoryStreamer.processDirectory(argPath, index, options);
 					}
 				}
 
@@ -68,20 +164,34 @@ public class Driver {
 				System.out.println("Bad text path: " + argParse.toString());
 			}
 		}
+
+		// the index keeps its own keys, so the shared tables can let go of them
+		String symbols = SymbolTable.summary();
+		SymbolTable.clearAll();
+
 		if (argParse.hasFlag("-index")) {
 
 			Path indexPath = argParse.getPath("-index", Path.of("index.json"));
+			// json (default), ndjson with one word per line, or binary records
+			OutputFormat format = OutputFormat.of(argParse.getString("-indexformat"), OutputFormat.JSON);
 			try {
-				index.mapJson(indexPath);
+				if (format != OutputFormat.JSON) {
+					index.writeIndex(indexPath, format);
+				} else if (queuer != null) {
+					index.mapJson(indexPath, queuer);
+				} else {
+					index.mapJson(indexPath);
+				}
 			} catch (IOException e) {
 				System.out.println("Bad text path: " + argParse.toString());
 			}
 		}
 		if (argParse.hasFlag("-counts")) {
 			Path countPath = argParse.getPath("-counts", Path.of("count.json"));
+			OutputFormat format = OutputFormat.of(argParse.getString("-countsformat"), OutputFormat.JSON);
 			try {
 				// System.out.println("index after add all: " + index.getCountMap());
-				index.wordCountJson(countPath);
+				index.writeCounts(countPath, format);
 
 			} catch (IOException e) {
 				System.out.println("Bad text path: " + argParse.toString());
@@ -99,7 +209,13 @@ public class Driver {
 				else {
 					// System.out.println(query);
 					// System.out.println("test query");
-					query.queryProcessor(searchPath, argParse.hasFlag("-exact"));
+					if (argParse.hasFlag("-querybatch")) {
+						// search blocks of lines together, reading shared postings once
+						int batch = Math.max(1, argParse.getInteger("-querybatch", 256));
+						query.queryProcessor(searchPath, argParse.hasFlag("-exact"), batch);
+					} else {
+						query.queryProcessor(searchPath, argParse.hasFlag("-exact"));
+					}
 
 				}
 			} catch (IOException e) {
@@ -112,17 +228,94 @@ public class Driver {
 
 			// System.out.println(argParse.toString());
 
+			// json (default), ndjson, or binary; only ndjson and binary mark results cut
+			// short by -expand or -timeout, the pretty json keeps its fixed layout
+			OutputFormat format = OutputFormat.of(argParse.getString("-resultsformat"), OutputFormat.JSON);
 			try {
-				query.resultsJson(resultPath);
+				query.writeResults(resultPath, format);
 			} catch (IOException e) {
 
 				System.out.println("Bad results path");
 			}
 		}
 
+		if (argParse.hasFlag("-stats")) {
+			System.out.println(StemCache.summary());
+			System.out.println(symbols);
+
+			if (pipeline != null) {
+				System.out.println(pipeline);
+			}
+
+			if (dedup != null) {
+				System.out.println(dedup);
+			}
+
+			if (spilling != null) {
+				System.out.println("Spilled runs: " + spilling.runs());
+			}
+		}
+
+		if (argParse.hasFlag("-serve")) {
+			int serverThreads = Math.max(1, argParse.getInteger("-serverthreads", getThread));
+			ExecutorService executor = Executors.newFixedThreadPool(serverThreads);
+
+			try {
+				SearchServer server = new SearchServer(index, argParse.getInteger("-serve", 8080), executor);
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+				server.start();
+				System.out.println("Serving searches at " + server);
+				server.join();
+			} catch (IOException e) {
+				System.out.println("Unable to start server: " + argParse.toString());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				executor.shutdown();
+			}
+		}
+
 		if (queuer != null) {
 			queuer.shutdown();
 		}
+
+		if (multiThread != null && multiThread.getSearchPool() != null) {
+			multiThread.getSearchPool().shutdown();
+		}
+
+		if (spilling != null) {
+			try {
+				spilling.close();
+			} catch (IOException e) {
+				System.out.println("Unable to close spilled index");
+			}
+		}
+	}
+
+	/**
+	 * Creates an ingestion pipeline from a comma separated list of thread counts
+	 * for the read, tokenize, stem, and index stages. Missing or invalid counts
+	 * fall back to the number of worker threads, or one thread for indexing.
+	 *
+	 * @param counts  the thread counts, such as "2,4,4,1", or null
+	 * @param index   the index to build
+	 * @param threads the number of worker threads
+	 * @return the pipeline
+	 */
+	private static IngestionPipeline newPipeline(String counts, ThreadedInvertedIndex index, int threads) {
+		int[] stages = { threads, threads, threads, 1 };
+		String[] parts = counts == null ? new String[0] : counts.split(",");
+
+		for (int i = 0; i < parts.length && i < stages.length; i++) {
+			try {
+				stages[i] = Math.max(1, Integer.parseInt(parts[i].strip()));
+			} catch (NumberFormatException e) {
+				System.out.println("Bad pipeline thread count: " + parts[i]);
+			}
+		}
+
+		return new IngestionPipeline(index, stages[0], stages[1], stages[2], stages[3],
+				IngestionPipeline.DEFAULT_CAPACITY);
 	}
 
 }
@@ -0,0 +1,574 @@
+package edu.usfca.cs272;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Path;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import edu.usfca.cs272.InvertedIndex.QuerySearchResults;
+
+/**
+ * Writes the same pretty JSON as {@link JsonWriter}, byte for byte, but
+ * encodes it straight into a reusable byte buffer that is written to a channel
+ * or stream in large blocks. Files named {@code .gz} are gzip compressed on the
+ * way out, see {@link Compression}. Integers are formatted without creating
+ * strings, and scores are rounded to eight places without
+ * {@link String#format(String, Object...)} unless the value is too close to a
+ * rounding boundary to be sure of the last digit.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author Jadon Huang
+ */
+public class FastJsonWriter implements Closeable {
+	/** Default size of the buffer in bytes. */
+	public static final int BUFFER_SIZE = 1 << 20;
+
+	/** Most bytes a single character or number may take. */
+	private static final int MAX_WRITE = 24;
+
+	/** Scale of a score rounded to eight places. */
+	private static final long SCALE = 100_000_000;
+
+	/** The channel to write to, or null when writing to a stream. */
+	private final WritableByteChannel channel;
+
+	/** The stream to write to, or null when writing to a channel. */
+	private final OutputStream out;
+
+	/** Bytes not yet written to the channel. */
+	private final byte[] buffer;
+
+	/** The number of bytes in the buffer. */
+	private int position;
+
+	/** Whether the default locale formats numbers with plain ASCII digits. */
+	private final boolean plainNumbers;
+
+	/**
+	 * Creates a writer that replaces the file at the given path, compressing it
+	 * if the file name ends in {@code .gz}.
+	 *
+	 * @param path the file path to use
+	 * @throws IOException if unable to open the file
+	 */
+	public FastJsonWriter(Path path) throws IOException {
+		this(Compression.isCompressed(path) ? null : FileChannel.open(path, WRITE, CREATE, TRUNCATE_EXISTING),
+				Compression.isCompressed(path) ? Compression.newOutputStream(path) : null, BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer for the channel. The channel is closed with the writer.
+	 *
+	 * @param channel  the channel to write to
+	 * @param capacity the size of the buffer in bytes
+	 */
+	public FastJsonWriter(WritableByteChannel channel, int capacity) {
+		this(channel, null, capacity);
+	}
+
+	/**
+	 * Creates a writer for the stream. The stream is closed with the writer.
+	 *
+	 * @param out      the stream to write to
+	 * @param capacity the size of the buffer in bytes
+	 */
+	public FastJsonWriter(OutputStream out, int capacity) {
+		this(null, out, capacity);
+	}
+
+	/**
+	 * Creates a writer for either a channel or a stream.
+	 *
+	 * @param channel  the channel to write to, or null
+	 * @param out      the stream to write to, or null
+	 * @param capacity the size of the buffer in bytes
+	 */
+	private FastJsonWriter(WritableByteChannel channel, OutputStream out, int capacity) {
+		this.channel = channel;
+		this.out = out;
+		this.buffer = new byte[Math.max(MAX_WRITE, capacity)];
+		this.position = 0;
+
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+		this.plainNumbers = symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.';
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with nested arrays to file.
+	 *
+	 * @param elements the elements to write
+	 * @param path     the file path to use
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeNestedArray(Map, Path)
+	 */
+	public static void writeNestedArray(
+			Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements, Path path)
+			throws IOException {
+		try (FastJsonWriter writer = new FastJsonWriter(path)) {
+			writer.writeNestedArray(elements, 0);
+		}
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object to file.
+	 *
+	 * @param elements the elements to write
+	 * @param path     the file path to use
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeObject(Map, Path)
+	 */
+	public static void writeObject(Map<String, ? extends Number> elements, Path path) throws IOException {
+		try (FastJsonWriter writer = new FastJsonWriter(path)) {
+			writer.writeObject(elements, 0);
+		}
+	}
+
+	/**
+	 * Writes the search results as pretty JSON to file.
+	 *
+	 * @param resultStore the search results by query
+	 * @param path        the file path to use
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeSearch(TreeMap, Path)
+	 */
+	public static void writeSearch(TreeMap<String, ArrayList<QuerySearchResults>> resultStore, Path path)
+			throws IOException {
+		try (FastJsonWriter writer = new FastJsonWriter(path)) {
+			writer.writeSearch(resultStore, 0);
+		}
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON array.
+	 *
+	 * @param elements the elements to write
+	 * @param indent   the initial indent level
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeBasicArray(Collection, java.io.Writer, int)
+	 */
+	public void writeBasicArray(Collection<? extends Number> elements, int indent) throws IOException {
+		write('[');
+
+		Iterator<? extends Number> iterate = elements.iterator();
+
+		if (iterate.hasNext()) {
+			write('\n');
+			writeIndent(indent + 1);
+			writeNumber(iterate.next());
+		}
+
+		while (iterate.hasNext()) {
+			write(',');
+			write('\n');
+			writeIndent(indent + 1);
+			writeNumber(iterate.next());
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write(']');
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with nested arrays.
+	 *
+	 * @param elements the elements to write
+	 * @param indent   the initial indent level
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeNest(Map, java.io.Writer, int)
+	 */
+	public void writeNest(Map<String, ? extends Collection<? extends Number>> elements, int indent)
+			throws IOException {
+		write('{');
+		boolean first = true;
+
+		for (var entry : elements.entrySet()) {
+			write(first ? "\n" : ",\n");
+			writeIndent(indent);
+			writeQuote(entry.getKey(), indent);
+			write(": ");
+			writeBasicArray(entry.getValue(), indent + 1);
+			first = false;
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write('}');
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with triply nested arrays.
+	 *
+	 * @param elements the elements to write
+	 * @param indent   the initial indent level
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeNestedArray(Map, java.io.Writer, int)
+	 */
+	public void writeNestedArray(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements,
+			int indent) throws IOException {
+		write('{');
+		boolean first = true;
+
+		for (var entry : elements.entrySet()) {
+			write(first ? "\n" : ",\n");
+			writeQuote(entry.getKey(), indent + 1);
+			write(": ");
+			writeNest(entry.getValue(), indent + 1);
+			first = false;
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write('}');
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object.
+	 *
+	 * @param elements the elements to write
+	 * @param indent   the initial indent level
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeObject(Map, java.io.Writer, int)
+	 */
+	public void writeObject(Map<String, ? extends Number> elements, int indent) throws IOException {
+		write('{');
+		boolean first = true;
+
+		for (var entry : elements.entrySet()) {
+			write(first ? "\n" : ",\n");
+			writeIndent(indent + 1);
+			writeQuote(entry.getKey(), indent);
+			write(": ");
+			writeNumber(entry.getValue());
+			first = false;
+		}
+
+		write('\n');
+		writeIndent(indent);
+		write('}');
+	}
+
+	/**
+	 * Writes the search results as pretty JSON.
+	 *
+	 * @param resultStore the search results by query
+	 * @param indent      the initial indent level
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeSearch(TreeMap, java.io.Writer, int)
+	 */
+	public void writeSearch(TreeMap<String, ArrayList<QuerySearchResults>> resultStore, int indent)
+			throws IOException {
+		write('{');
+		write('\n');
+
+		for (var entry : resultStore.entrySet()) {
+			String query = entry.getKey();
+			ArrayList<QuerySearchResults> results = entry.getValue();
+
+			if (query.indexOf('[') >= 0 || query.indexOf(']') >= 0) {
+				query = query.replace("[", "").replace("]", "");
+			}
+			writeQuote(query, indent + 1);
+			write(": [");
+
+			for (QuerySearchResults result : results) {
+				write('\n');
+				writeIndent(indent + 2);
+				write('{');
+				write('\n');
+				writeIndent(indent + 3);
+				write("\"count\": ");
+				writeCount(result.wordGet());
+				write(", \n");
+				writeIndent(indent + 3);
+				write("\"score\": ");
+				writeScore(result.freqGet());
+				write(", \n");
+				writeIndent(indent + 3);
+				write("\"where\": \"");
+				write(result.fileGet());
+				write("\"\n");
+				writeIndent(indent + 2);
+				write('}');
+
+				if (result != results.get(results.size() - 1)) {
+					write(',');
+				}
+			}
+			write('\n');
+			writeIndent(indent + 1);
+			write(entry.getKey() != resultStore.lastKey() ? "],\n" : "]\n");
+		}
+		write('}');
+		write('\n');
+	}
+
+	/**
+	 * Indents and then writes the text element surrounded by {@code " "}
+	 * quotation marks.
+	 *
+	 * @param element the element to write
+	 * @param indent  the number of times to indent
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeQuote(String element, int indent) throws IOException {
+		writeIndent(indent);
+		write('"');
+		write(element);
+		write('"');
+	}
+
+	/**
+	 * Writes the text as a JSON string, escaping quotes, backslashes, and
+	 * control characters. The pretty JSON output does not escape its keys, so
+	 * this is only used by the compact formats.
+	 *
+	 * @param text the text to write
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeEscaped(String text) throws IOException {
+		write('"');
+
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+
+			if (c == '"' || c == '\\') {
+				write('\\');
+				write(c);
+			} else if (c < 0x20) {
+				write("\\u00");
+				write(Character.forDigit(c >> 4, 16));
+				write(Character.forDigit(c & 0xF, 16));
+			} else if (c < 0x80) {
+				write(c);
+			} else {
+				// hands the rest of a surrogate pair to the UTF-8 encoder too
+				int end = Character.isHighSurrogate(c) && i + 1 < text.length() ? i + 2 : i + 1;
+				write(text.substring(i, end));
+				i = end - 1;
+			}
+		}
+
+		write('"');
+	}
+
+	/**
+	 * Indents by the specified number of times. Does nothing if the indentation
+	 * level is 0 or less.
+	 *
+	 * @param indent the number of times to indent
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeIndent(int indent) throws IOException {
+		while (indent-- > 0) {
+			write(' ');
+			write(' ');
+		}
+	}
+
+	/**
+	 * Writes a number the way {@link Number#toString()} would.
+	 *
+	 * @param number the number to write
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeNumber(Number number) throws IOException {
+		if (number instanceof Integer) {
+			writeInt(number.intValue());
+		} else {
+			write(number.toString());
+		}
+	}
+
+	/**
+	 * Writes an integer the way {@link Integer#toString(int)} would.
+	 *
+	 * @param value the integer to write
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeInt(int value) throws IOException {
+		if (value < 0) {
+			write('-');
+			writeDigits(-(long) value, 1);
+		} else {
+			writeDigits(value, 1);
+		}
+	}
+
+	/**
+	 * Writes a count the way {@code new DecimalFormat("0")} would.
+	 *
+	 * @param count the count to write
+	 * @throws IOException if an IO error occurs
+	 */
+	private void writeCount(int count) throws IOException {
+		if (plainNumbers && count >= 0) {
+			writeDigits(count, 1);
+		} else {
+			write(new DecimalFormat("0").format(count));
+		}
+	}
+
+	/**
+	 * Writes a score the way {@code String.format("%.8f", score)} would. That
+	 * rounds the shortest decimal form of the score half up, which is the same
+	 * as rounding the scaled score unless the scaled score is very close to
+	 * halfway between two integers, so those few scores still use the formatter.
+	 *
+	 * @param score the score to write
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeScore(double score) throws IOException {
+		if (plainNumbers && Math.copySign(1.0, score) > 0 && score < 1000) {
+			double scaled = score * SCALE;
+			double whole = Math.floor(scaled);
+			double fraction = scaled - whole;
+
+			if (Math.abs(fraction - 0.5) > 1e-4) {
+				long rounded = (long) whole + (fraction > 0.5 ? 1 : 0);
+				writeDigits(rounded / SCALE, 1);
+				write('.');
+				writeDigits(rounded % SCALE, 8);
+				return;
+			}
+		}
+
+		write(String.format("%.8f", score));
+	}
+
+	/**
+	 * Writes the decimal digits of a value, padded with leading zeros.
+	 *
+	 * @param value the value to write, not negative
+	 * @param width the fewest digits to write
+	 * @throws IOException if an IO error occurs
+	 */
+	private void writeDigits(long value, int width) throws IOException {
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		digits = Math.max(digits, width);
+
+		if (buffer.length - position < digits) {
+			flush();
+		}
+
+		for (int i = position + digits - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position += digits;
+	}
+
+	/**
+	 * Writes a single ASCII character.
+	 *
+	 * @param c the character to write
+	 * @throws IOException if an IO error occurs
+	 */
+	public void write(char c) throws IOException {
+		if (position == buffer.length) {
+			flush();
+		}
+		buffer[position++] = (byte) c;
+	}
+
+	/**
+	 * Writes the text encoded as UTF-8.
+	 *
+	 * @param text the text to write
+	 * @throws IOException if an IO error occurs, or if the text has an unpaired
+	 *                     surrogate, as the UTF-8 writers of {@link JsonWriter} do
+	 */
+	public void write(String text) throws IOException {
+		int length = text.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+
+			if (buffer.length - position < 4) {
+				flush();
+			}
+
+			if (c < 0x80) {
+				buffer[position++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[position++] = (byte) (0xC0 | c >> 6);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			} else if (!Character.isSurrogate(c)) {
+				buffer[position++] = (byte) (0xE0 | c >> 12);
+				buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+				buffer[position++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+				int code = Character.toCodePoint(c, text.charAt(++i));
+				buffer[position++] = (byte) (0xF0 | code >> 18);
+				buffer[position++] = (byte) (0x80 | code >> 12 & 0x3F);
+				buffer[position++] = (byte) (0x80 | code >> 6 & 0x3F);
+				buffer[position++] = (byte) (0x80 | code & 0x3F);
+			} else {
+				throw new MalformedInputException(1);
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes to the channel or stream.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	public void flush() throws IOException {
+		if (out != null) {
+			out.write(buffer, 0, position);
+		} else {
+			ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+		}
+		position = 0;
+	}
+
+	/**
+	 * Writes the buffered bytes and closes the channel or stream.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (out != null) {
+				out.close();
+			} else {
+				channel.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,636 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Semaphore;
+
+import edu.usfca.cs272.RecordWriter.Kind;
+
+/**
+ * Rebuilds an index from the files written by the {@code -index} and
+ * {@code -counts} flags, so a run can start from an earlier index instead of
+ * crawling and stemming the text again.
+ *
+ * Pretty JSON is read as bytes in blocks of about {@link #BLOCK_BYTES} bytes.
+ * Each block is cut where a new word starts at the top level of the object, so
+ * every block holds whole words and can be parsed on its own, and a work queue
+ * parses several blocks at once. Numbers are read straight from the bytes and
+ * locations are decoded once per block instead of once per word. NDJSON and
+ * binary files are read a record at a time with {@link RecordReader}.
+ *
+ * Locations without a word count are given their highest position, which is
+ * their word count as long as the counts file is not loaded to say otherwise.
+ *
+ * @author Jadon Huang
+ */
+public class IndexLoader {
+	/** About how many bytes of JSON each block should hold. */
+	public static final int BLOCK_BYTES = 1 << 22;
+
+	/** The index being loaded. */
+	private final InvertedIndex index;
+
+	/** Limits the number of blocks read but not yet parsed. */
+	private final Semaphore permits;
+
+	/** The highest position seen at each location. */
+	private final HashMap<String, Integer> highest;
+
+	/** Canonical locations, so every word at a location shares one string. */
+	private final SymbolTable paths;
+
+	/** The start of the next block, read past the end of the last block. */
+	private byte[] carry;
+
+	/** The first error found by a worker, if any. */
+	private IOException failure;
+
+	/**
+	 * Creates a loader for an index.
+	 *
+	 * @param index    the index to add to
+	 * @param inFlight the most blocks read but not yet parsed
+	 */
+	private IndexLoader(InvertedIndex index, int inFlight) {
+		this.index = index;
+		this.permits = new Semaphore(Math.max(1, inFlight));
+		this.highest = new HashMap<>();
+		this.paths = new SymbolTable();
+		this.carry = new byte[0];
+		this.failure = null;
+	}
+
+	/**
+	 * Adds every word of a written index to the index.
+	 *
+	 * @param path   the file path of the written index
+	 * @param index  the index to add to
+	 * @param format the format the index was written in
+	 * @throws IOException if an IO error occurs or the file is malformed
+	 */
+	public static void loadIndex(Path path, InvertedIndex index, OutputFormat format) throws IOException {
+		IndexLoader loader = new IndexLoader(index, 1);
+
+		if (format == OutputFormat.JSON) {
+			try (InputStream in = Compression.newInputStream(path)) {
+				long offset = 0;
+				byte[] block;
+
+				while ((block = loader.nextBlock(in)) != null) {
+					loader.parse(block, offset);
+					offset += block.length;
+				}
+			}
+		} else {
+			loader.read(path, format);
+		}
+		loader.countLocations();
+	}
+
+	/**
+	 * Adds every word of a written index to the index, parsing blocks of a
+	 * pretty JSON index on the work queue.
+	 *
+	 * @param path   the file path of the written index
+	 * @param index  the index to add to
+	 * @param format the format the index was written in
+	 * @param queuer the work queue to parse blocks with
+	 * @throws IOException if an IO error occurs or the file is malformed
+	 */
+	public static void loadIndex(Path path, InvertedIndex index, OutputFormat format, TaskQueue queuer)
+			throws IOException {
+		if (format != OutputFormat.JSON) {
+			// the records are decoded as they are read, leaving nothing to split up
+			loadIndex(path, index, format);
+			return;
+		}
+
+		IndexLoader loader = new IndexLoader(index, queuer.size() * 2);
+
+		try (InputStream in = Compression.newInputStream(path)) {
+			try {
+				loader.submit(in, queuer);
+			} finally {
+				queuer.finish();
+			}
+		}
+
+		synchronized (loader) {
+			if (loader.failure != null) {
+				throw loader.failure;
+			}
+		}
+		loader.countLocations();
+	}
+
+	/**
+	 * Sets the word count of every location in a written counts file.
+	 *
+	 * @param path   the file path of the written word counts
+	 * @param index  the index to set the word counts of
+	 * @param format the format the word counts were written in
+	 * @throws IOException if an IO error occurs or the file is malformed
+	 */
+	public static void loadCounts(Path path, InvertedIndex index, OutputFormat format) throws IOException {
+		if (format != OutputFormat.JSON) {
+			try (RecordReader reader = new RecordReader(path, format, Kind.COUNTS)) {
+				while (reader.next()) {
+					index.setCount(reader.key(), reader.count());
+				}
+			}
+			return;
+		}
+
+		byte[] bytes;
+		try (InputStream in = Compression.newInputStream(path)) {
+			bytes = in.readAllBytes();
+		}
+
+		Parser parser = new Parser(bytes, 0, new SymbolTable());
+		parser.expect('{');
+
+		if (!parser.skip('}')) {
+			do {
+				String location = parser.text(true);
+				parser.expect(':');
+				index.setCount(location, parser.number());
+			} while (parser.skip(','));
+
+			parser.expect('}');
+		}
+		parser.end();
+	}
+
+	/**
+	 * Reads an index written as NDJSON or binary records.
+	 *
+	 * @param path   the file path of the written index
+	 * @param format the format the index was written in
+	 * @throws IOException if an IO error occurs or the file is malformed
+	 */
+	private void read(Path path, OutputFormat format) throws IOException {
+		try (RecordReader reader = new RecordReader(path, format, Kind.INDEX)) {
+			LinkedHashMap<String, TreeMap<String, TreeSet<Integer>>> terms = new LinkedHashMap<>();
+			HashMap<String, Integer> counts = new HashMap<>();
+			long positions = 0;
+
+			while (reader.next()) {
+				TreeMap<String, TreeSet<Integer>> locations = new TreeMap<>();
+
+				for (var entry : reader.locations().entrySet()) {
+					String location = paths.intern(entry.getKey());
+					TreeSet<Integer> set = new TreeSet<>(entry.getValue());
+
+					if (!set.isEmpty()) {
+						counts.merge(location, set.last(), Math::max);
+					}
+					locations.put(location, set);
+					positions += set.size();
+				}
+				merge(terms, reader.key(), locations);
+
+				if (positions >= BLOCK_BYTES / 8) {
+					add(terms, counts);
+					terms = new LinkedHashMap<>();
+					counts = new HashMap<>();
+					positions = 0;
+				}
+			}
+			add(terms, counts);
+		}
+	}
+
+	/**
+	 * Reads blocks of the file and submits a task to parse each.
+	 *
+	 * @param in     the file to read
+	 * @param queuer the work queue to parse blocks with
+	 * @throws IOException if an IO error occurs or interrupted while waiting
+	 */
+	private void submit(InputStream in, TaskQueue queuer) throws IOException {
+		long offset = 0;
+		byte[] block;
+
+		while (!failed() && (block = nextBlock(in)) != null) {
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while loading");
+			}
+
+			queuer.execute(new BlockTask(block, offset));
+			offset += block.length;
+		}
+	}
+
+	/**
+	 * Reads the next block of whole words. A block is cut right after the comma
+	 * that ends a word at the top level, found as a comma and a new line followed
+	 * by the two space indent and quote of the next word. The rest is kept for
+	 * the next block. A block without such a place grows until one is found or
+	 * the file ends.
+	 *
+	 * @param in the file to read
+	 * @return the next block, or null at the end of the file
+	 * @throws IOException if an IO error occurs
+	 */
+	private byte[] nextBlock(InputStream in) throws IOException {
+		byte[] data = carry;
+		int length = carry.length;
+
+		while (true) {
+			// grow geometrically, so a word larger than many blocks is copied a few times
+			if (data.length - length < BLOCK_BYTES) {
+				data = Arrays.copyOf(data, Math.max(length + BLOCK_BYTES, 2 * data.length));
+			}
+
+			int kept = length;
+			int read = in.readNBytes(data, kept, BLOCK_BYTES);
+
+			if (read == 0) {
+				carry = new byte[0];
+				return kept == 0 ? null : Arrays.copyOf(data, kept);
+			}
+			length += read;
+
+			// the bytes kept before were already searched, except where the end cut a match
+			for (int i = length - 4; i >= Math.max(1, kept - 4); i--) {
+				if (data[i] == '\n' && data[i - 1] == ',' && data[i + 1] == ' ' && data[i + 2] == ' '
+						&& data[i + 3] == '"') {
+					carry = Arrays.copyOfRange(data, i, length);
+					return Arrays.copyOf(data, i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses a block of whole words and adds them to the index.
+	 *
+	 * @param block  the block to parse
+	 * @param offset where the block starts in the file
+	 * @throws IOException if the block is malformed
+	 */
+	private void parse(byte[] block, long offset) throws IOException {
+		LinkedHashMap<String, TreeMap<String, TreeSet<Integer>>> terms = new LinkedHashMap<>();
+		HashMap<String, Integer> counts = new HashMap<>();
+		Parser parser = new Parser(block, offset, paths);
+
+		// the opening and closing braces of the object are in the first and last block
+		parser.skip('{');
+
+		while (!parser.done() && !parser.skip('}')) {
+			parser.skip(',');
+			String term = parser.text(false);
+			parser.expect(':');
+			parser.expect('{');
+			TreeMap<String, TreeSet<Integer>> locations = new TreeMap<>();
+
+			if (!parser.skip('}')) {
+				do {
+					String location = parser.text(true);
+					parser.expect(':');
+					TreeSet<Integer> positions = parser.positions();
+
+					if (!positions.isEmpty()) {
+						counts.merge(location, positions.last(), Math::max);
+					}
+					locations.put(location, positions);
+				} while (parser.skip(','));
+
+				parser.expect('}');
+			}
+			merge(terms, term, locations);
+			parser.skip(',');
+		}
+		parser.end();
+		add(terms, counts);
+	}
+
+	/**
+	 * Adds a word to the words of a block, combining the locations if the word
+	 * was already seen.
+	 *
+	 * @param terms     the words of the block
+	 * @param term      the word
+	 * @param locations the positions of the word at each location
+	 */
+	private static void merge(Map<String, TreeMap<String, TreeSet<Integer>>> terms, String term,
+			TreeMap<String, TreeSet<Integer>> locations) {
+		TreeMap<String, TreeSet<Integer>> existing = terms.putIfAbsent(term, locations);
+
+		if (existing != null) {
+			for (var location : locations.entrySet()) {
+				existing.computeIfAbsent(location.getKey(), key -> new TreeSet<>()).addAll(location.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Adds the words of a block to the index and remembers the highest position
+	 * of each location.
+	 *
+	 * @param terms  the words of the block
+	 * @param counts the highest position of each location in the block
+	 */
+	private void add(Map<String, TreeMap<String, TreeSet<Integer>>> terms, Map<String, Integer> counts) {
+		index.addTerms(terms);
+
+		synchronized (highest) {
+			for (var count : counts.entrySet()) {
+				highest.merge(count.getKey(), count.getValue(), Math::max);
+			}
+		}
+	}
+
+	/**
+	 * Gives every location without a word count its highest position.
+	 */
+	private void countLocations() {
+		for (var count : highest.entrySet()) {
+			if (index.getCount(count.getKey()) == null) {
+				index.setCount(count.getKey(), count.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a worker already found an error.
+	 *
+	 * @return true if the load failed
+	 */
+	private synchronized boolean failed() {
+		return failure != null;
+	}
+
+	/**
+	 * Records the first error found by a worker.
+	 *
+	 * @param e the error
+	 */
+	private synchronized void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Task that parses a block of words and adds them to the index.
+	 */
+	private class BlockTask implements Runnable {
+		/** The block to parse. */
+		private final byte[] block;
+
+		/** Where the block starts in the file. */
+		private final long offset;
+
+		/**
+		 * Creates a task for a block.
+		 *
+		 * @param block  the block to parse
+		 * @param offset where the block starts in the file
+		 */
+		private BlockTask(byte[] block, long offset) {
+			this.block = block;
+			this.offset = offset;
+		}
+
+		@Override
+		public void run() throws UncheckedIOException {
+			try {
+				if (!failed()) {
+					parse(block, offset);
+				}
+			} catch (IOException e) {
+				fail(e);
+				throw new UncheckedIOException(e);
+			} finally {
+				permits.release();
+			}
+		}
+	}
+
+	/**
+	 * Reads the JSON of a block straight from its UTF-8 bytes.
+	 */
+	private static class Parser {
+		/** How many decoded locations each parser remembers. */
+		private static final int CACHE_SIZE = 1 << 8;
+
+		/** The bytes to parse. */
+		private final byte[] bytes;
+
+		/** Where the bytes start in the file, for error messages. */
+		private final long offset;
+
+		/** The next byte to parse. */
+		private int index;
+
+		/** The bytes of each remembered location, by hash. */
+		private final byte[][] cachedBytes;
+
+		/** The interned text of each remembered location, by hash. */
+		private final String[] cachedText;
+
+		/** Canonical locations of the file being parsed. */
+		private final SymbolTable paths;
+
+		/**
+		 * Creates a parser.
+		 *
+		 * @param bytes  the bytes to parse
+		 * @param offset where the bytes start in the file
+		 * @param paths  the canonical locations of the file
+		 */
+		private Parser(byte[] bytes, long offset, SymbolTable paths) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.index = 0;
+			this.cachedBytes = new byte[CACHE_SIZE][];
+			this.cachedText = new String[CACHE_SIZE];
+			this.paths = paths;
+		}
+
+		/**
+		 * Skips whitespace and returns whether every byte is parsed.
+		 *
+		 * @return true if nothing is left
+		 */
+		private boolean done() {
+			while (index < bytes.length && (bytes[index] == ' ' || bytes[index] == '\n' || bytes[index] == '\r'
+					|| bytes[index] == '\t')) {
+				index++;
+			}
+			return index >= bytes.length;
+		}
+
+		/**
+		 * Skips the next character if it is the one given.
+		 *
+		 * @param expected the character to skip
+		 * @return true if it was skipped
+		 */
+		private boolean skip(char expected) {
+			if (!done() && bytes[index] == expected) {
+				index++;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Skips the next character, which must be the one given.
+		 *
+		 * @param expected the character to skip
+		 * @throws IOException if the next character is different
+		 */
+		private void expect(char expected) throws IOException {
+			if (!skip(expected)) {
+				throw malformed("Expected '" + expected + "'");
+			}
+		}
+
+		/**
+		 * Makes sure only whitespace is left.
+		 *
+		 * @throws IOException if anything else is left
+		 */
+		private void end() throws IOException {
+			if (!done()) {
+				throw malformed("Unexpected '" + (char) (bytes[index] & 0xFF) + "'");
+			}
+		}
+
+		/**
+		 * Parses a string and interns it. Locations repeat across words, so their
+		 * text is remembered by their bytes and only decoded the first time.
+		 *
+		 * @param location true for a location, false for a word
+		 * @return the interned string
+		 * @throws IOException if there is no string
+		 */
+		private String text(boolean location) throws IOException {
+			expect('"');
+			int start = index;
+			int hash = 0;
+			boolean escaped = false;
+
+			while (index < bytes.length && bytes[index] != '"') {
+				if (bytes[index] == '\\') {
+					escaped = true;
+
+					if (++index >= bytes.length) {
+						break;
+					}
+				}
+				hash = 31 * hash + bytes[index++];
+			}
+
+			if (index >= bytes.length) {
+				throw malformed("Unterminated string");
+			}
+
+			int end = index++;
+			SymbolTable symbols = location ? paths : SymbolTable.TERMS;
+
+			if (escaped) {
+				String text = new String(bytes, start, end - start, UTF_8);
+				try {
+					return symbols.intern(JsonText.unescape(text, 0, text.length()));
+				} catch (IllegalArgumentException e) {
+					throw malformed("Bad escape");
+				}
+			}
+
+			if (!location) {
+				return symbols.intern(new String(bytes, start, end - start, UTF_8));
+			}
+
+			int slot = (hash ^ hash >>> 16) & CACHE_SIZE - 1;
+			byte[] cached = cachedBytes[slot];
+
+			if (cached == null || !Arrays.equals(cached, 0, cached.length, bytes, start, end)) {
+				cachedBytes[slot] = Arrays.copyOfRange(bytes, start, end);
+				cachedText[slot] = symbols.intern(new String(bytes, start, end - start, UTF_8));
+			}
+			return cachedText[slot];
+		}
+
+		/**
+		 * Parses an integer.
+		 *
+		 * @return the integer
+		 * @throws IOException if there is no integer
+		 */
+		private int number() throws IOException {
+			done();
+			boolean negative = index < bytes.length && bytes[index] == '-';
+			if (negative) {
+				index++;
+			}
+
+			int start = index;
+			long value = 0;
+
+			while (index < bytes.length && bytes[index] >= '0' && bytes[index] <= '9') {
+				value = value * 10 + (bytes[index++] - '0');
+
+				if (value > Integer.MAX_VALUE + 1L) {
+					throw malformed("Number too large");
+				}
+			}
+
+			if (index == start) {
+				throw malformed("Expected a number");
+			}
+
+			value = negative ? -value : value;
+			if (value > Integer.MAX_VALUE) {
+				throw malformed("Number too large");
+			}
+			return (int) value;
+		}
+
+		/**
+		 * Parses an array of positions.
+		 *
+		 * @return the positions
+		 * @throws IOException if there is no array of integers
+		 */
+		private TreeSet<Integer> positions() throws IOException {
+			TreeSet<Integer> positions = new TreeSet<>();
+			expect('[');
+
+			if (!skip(']')) {
+				do {
+					positions.add(number());
+				} while (skip(','));
+
+				expect(']');
+			}
+			return positions;
+		}
+
+		/**
+		 * Creates an error that says where the parser is in the file.
+		 *
+		 * @param message what is wrong
+		 * @return the error
+		 */
+		private IOException malformed(String message) {
+			return new IOException(message + " at byte " + (offset + index));
+		}
+	}
+}
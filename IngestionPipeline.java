@@ -0,0 +1,547 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Builds an inverted index with a staged pipeline instead of one task per file.
+ * Files are read, tokenized, stemmed, and indexed by separate groups of threads
+ * connected by bounded queues, so the number of threads doing I/O can be tuned
+ * separately from the number doing CPU work. Lines and tokens move between
+ * stages in batches, and each file is reassembled in order by the index stage,
+ * so the result is identical to {@link DirectoryStreamer}.
+ *
+ * Each stage counts the batches and items it handles, the time spent working,
+ * and how full its input queue was, which shows the bottleneck stage.
+ *
+ * @author Jadon Huang
+ */
+public class IngestionPipeline {
+	/** The default capacity of the queue in front of each stage. */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/** The number of lines read from a file into one batch. */
+	public static final int BATCH_LINES = 256;
+
+	/** Marks the end of the input for a single thread of a stage. */
+	private static final Batch END = new Batch(null, -1, true, null);
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/** The index to add finished files to. */
+	private final ThreadedInvertedIndex index;
+
+	/** Reads files into batches of lines. */
+	private final Stage reader;
+
+	/** Parses batches of lines into batches of words. */
+	private final Stage tokenizer;
+
+	/** Stems batches of words. */
+	private final Stage stemmer;
+
+	/** Adds batches of stems to the file they came from. */
+	private final Stage indexer;
+
+	/**
+	 * Creates a pipeline with the given number of threads for each stage.
+	 *
+	 * @param index      the index to build
+	 * @param readers    number of threads reading files
+	 * @param tokenizers number of threads parsing lines into words
+	 * @param stemmers   number of threads stemming words
+	 * @param indexers   number of threads adding stems to the index
+	 * @param capacity   the capacity of the queue in front of each stage
+	 */
+	public IngestionPipeline(ThreadedInvertedIndex index, int readers, int tokenizers, int stemmers, int indexers,
+			int capacity) {
+		this.index = index;
+		this.indexer = new Stage("index", indexers, capacity, null) {
+			@Override
+			protected int process(Batch batch) {
+				batch.file.accept(batch);
+				return batch.items.size();
+			}
+		};
+		this.stemmer = new Stage("stem", stemmers, capacity, indexer) {
+			@Override
+			protected int process(Batch batch) {
+				StemCache cache = StemCache.local();
+				ArrayList<String> stems = new ArrayList<>(batch.items.size());
+
+				for (String word : batch.items) {
+					stems.add(cache.stem(word));
+				}
+
+				batch.items = stems;
+				next.put(batch);
+				return stems.size();
+			}
+		};
+		this.tokenizer = new Stage("tokenize", tokenizers, capacity, stemmer) {
+			@Override
+			protected int process(Batch batch) {
+				ArrayList<String> words = new ArrayList<>();
+
+				for (String line : batch.items) {
+					for (String word : WordCleaner.parse(line)) {
+						words.add(word);
+					}
+				}
+
+				int lines = batch.items.size();
+				batch.items = words;
+				next.put(batch);
+				return lines;
+			}
+		};
+		this.reader = new Stage("read", readers, capacity, tokenizer) {
+			@Override
+			protected int process(Batch batch) {
+				return read(batch.file, next);
+			}
+		};
+	}
+
+	/**
+	 * Creates a pipeline using the same number of threads for the read, tokenize,
+	 * and stem stages and a single index thread.
+	 *
+	 * @param index   the index to build
+	 * @param threads number of threads for each of the first three stages
+	 */
+	public IngestionPipeline(ThreadedInvertedIndex index, int threads) {
+		this(index, threads, threads, threads, 1, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Indexes the file, or every text file found under the directory, and waits
+	 * until every stage is done.
+	 *
+	 * @param path the file or directory to index
+	 * @throws IOException if unable to traverse the directory
+	 */
+	public void processDirectory(Path path) throws IOException {
+		reader.start();
+		tokenizer.start();
+		stemmer.start();
+		indexer.start();
+
+		try {
+			if (Files.isDirectory(path)) {
+				traverseDirectory(path);
+			} else {
+				reader.put(new Batch(new FileState(path), 0, false, null));
+			}
+		} finally {
+			reader.close();
+			indexer.await();
+		}
+	}
+
+	/**
+	 * Recursively traverses through directory, adding each text file to the read
+	 * stage.
+	 *
+	 * @param directory the current file directory
+	 * @throws IOException if unable to list the directory
+	 */
+	private void traverseDirectory(Path directory) throws IOException {
+		try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+			for (Path path : listing) {
+				if (Files.isDirectory(path)) {
+					traverseDirectory(path);
+				} else if (DirectoryStreamer.isTextFile(path)) {
+					reader.put(new Batch(new FileState(path), 0, false, null));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a file, or every text entry of a zip archive, and sends the lines on
+	 * in numbered batches.
+	 *
+	 * @param file the file to read
+	 * @param next the stage to send the batches to
+	 * @return the number of lines read
+	 */
+	private int read(FileState file, Stage next) {
+		if (!ArchiveReader.isZip(file.path)) {
+			try (BufferedReader reader = DirectoryStreamer.newReader(file.path)) {
+				return read(file, reader, next);
+			} catch (IOException e) {
+				return fail(file, e, next);
+			}
+		}
+
+		int[] count = { 0 };
+		try {
+			ArchiveReader.forEachEntry(file.path, (location, reader) -> {
+				count[0] += read(new FileState(file.path, location), reader, next);
+			});
+		} catch (IOException e) {
+			System.err.printf("Warning: Unable to read %s, skipping rest of archive.%n", file.path);
+			log.catching(Level.DEBUG, e);
+		}
+		return count[0];
+	}
+
+	/**
+	 * Reads the text of a file line by line and sends the lines on in numbered
+	 * batches. The last batch is marked so the index stage knows when the file is
+	 * complete.
+	 *
+	 * @param file   the file being read
+	 * @param reader the reader of the text of the file
+	 * @param next   the stage to send the batches to
+	 * @return the number of lines read
+	 */
+	private static int read(FileState file, BufferedReader reader, Stage next) {
+		int sequence = 0;
+		int count = 0;
+		List<String> lines = new ArrayList<>(BATCH_LINES);
+
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+				count++;
+
+				if (lines.size() == BATCH_LINES) {
+					next.put(new Batch(file, sequence++, false, lines));
+					lines = new ArrayList<>(BATCH_LINES);
+				}
+			}
+		} catch (IOException e) {
+			return count + fail(file, e, next);
+		}
+
+		next.put(new Batch(file, sequence, true, lines));
+		return count;
+	}
+
+	/**
+	 * Marks the file as unreadable and sends an empty last batch so the index
+	 * stage can discard it.
+	 *
+	 * @param file the file that could not be read
+	 * @param e    the cause
+	 * @param next the stage to send the batch to
+	 * @return zero lines
+	 */
+	private static int fail(FileState file, IOException e, Stage next) {
+		System.err.printf("Warning: Unable to read %s, skipping file.%n", file.location);
+		log.catching(Level.DEBUG, e);
+		file.failed = true;
+		next.put(new Batch(file, Integer.MAX_VALUE, true, new ArrayList<>()));
+		return 0;
+	}
+
+	@Override
+	public String toString() {
+		return String.join(System.lineSeparator(), reader.toString(), tokenizer.toString(), stemmer.toString(),
+				indexer.toString());
+	}
+
+	/**
+	 * A numbered group of lines, words, or stems from a single file.
+	 */
+	private static class Batch {
+		/** The file the items came from. */
+		private final FileState file;
+
+		/** The position of this batch within the file. */
+		private final int sequence;
+
+		/** Whether this is the last batch of the file. */
+		private final boolean last;
+
+		/** The lines, words, or stems in this batch. */
+		private List<String> items;
+
+		/**
+		 * Creates a batch.
+		 *
+		 * @param file     the file the items came from
+		 * @param sequence the position of this batch within the file
+		 * @param last     whether this is the last batch of the file
+		 * @param items    the items in this batch
+		 */
+		public Batch(FileState file, int sequence, boolean last, List<String> items) {
+			this.file = file;
+			this.sequence = sequence;
+			this.last = last;
+			this.items = items;
+		}
+	}
+
+	/**
+	 * Puts the stem batches of a single file back in order, assigns positions,
+	 * and merges the file into the shared index once its last batch arrives.
+	 */
+	private class FileState {
+		/** The file being indexed. */
+		private final Path path;
+
+		/** The location stored in the index. */
+		private final String location;
+
+		/** The stems of this file in order. */
+		private final ArrayList<String> stems;
+
+		/** Batches that arrived before the batches in front of them. */
+		private final Map<Integer, Batch> waiting;
+
+		/** The sequence number of the next batch to add. */
+		private int next;
+
+		/** Whether the file could not be read. */
+		private volatile boolean failed;
+
+		/**
+		 * Creates the state for a file.
+		 *
+		 * @param path the file being indexed
+		 */
+		public FileState(Path path) {
+			this(path, path.toString());
+		}
+
+		/**
+		 * Creates the state for a file stored under the given location, such as an
+		 * entry of a zip archive.
+		 *
+		 * @param path     the file being read
+		 * @param location the location stored in the index
+		 */
+		public FileState(Path path, String location) {
+			this.path = path;
+			this.location = location;
+			this.stems = new ArrayList<>();
+			this.waiting = new HashMap<>();
+			this.next = 0;
+			this.failed = false;
+		}
+
+		/**
+		 * Adds the batch, and any waiting batches that follow it, to the stems of
+		 * the file. Adds the file to the index once the last batch is added.
+		 *
+		 * @param batch the batch of stems
+		 */
+		public synchronized void accept(Batch batch) {
+			waiting.put(batch.sequence, batch);
+
+			Batch ready;
+			while ((ready = waiting.remove(next)) != null) {
+				stems.addAll(ready.items);
+				next++;
+
+				if (ready.last && !failed) {
+					index.addAll(stems, location, 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A group of threads that take batches from a bounded queue, process them,
+	 * and usually pass them to the next stage.
+	 */
+	private abstract static class Stage {
+		/** The name used when reporting. */
+		private final String name;
+
+		/** The threads of this stage. */
+		private final Thread[] threads;
+
+		/** The bounded queue in front of this stage. */
+		private final BlockingQueue<Batch> queue;
+
+		/** The stage that processed batches are sent to. */
+		protected final Stage next;
+
+		/** Number of threads of this stage still running. */
+		private final AtomicInteger running;
+
+		/** Number of batches processed. */
+		private final LongAdder batches;
+
+		/** Number of items in the batches processed. */
+		private final LongAdder items;
+
+		/** Time spent processing batches, in nanoseconds, over all threads. */
+		private final LongAdder busy;
+
+		/** Sum of the queue sizes seen each time a batch was added. */
+		private final LongAdder occupancy;
+
+		/** Number of batches added to the queue. */
+		private final LongAdder added;
+
+		/** The largest queue size seen. */
+		private volatile int peak;
+
+		/** The wall clock time the stage started. */
+		private long started;
+
+		/** The wall clock time the last thread finished. */
+		private volatile long stopped;
+
+		/**
+		 * Creates a stage.
+		 *
+		 * @param name     the name used when reporting
+		 * @param threads  the number of threads
+		 * @param capacity the capacity of the input queue
+		 * @param next     the stage to send processed batches to
+		 */
+		public Stage(String name, int threads, int capacity, Stage next) {
+			this.name = name;
+			this.threads = new Thread[Math.max(1, threads)];
+			this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+			this.next = next;
+			this.running = new AtomicInteger(this.threads.length);
+			this.batches = new LongAdder();
+			this.items = new LongAdder();
+			this.busy = new LongAdder();
+			this.occupancy = new LongAdder();
+			this.added = new LongAdder();
+			this.peak = 0;
+
+			for (int i = 0; i < this.threads.length; i++) {
+				this.threads[i] = new Thread(this::work, "Pipeline-" + name + "-" + i);
+			}
+		}
+
+		/**
+		 * Processes a single batch.
+		 *
+		 * @param batch the batch to process
+		 * @return the number of lines, words, or stems processed
+		 */
+		protected abstract int process(Batch batch);
+
+		/**
+		 * Starts the threads of this stage.
+		 */
+		public void start() {
+			started = System.nanoTime();
+			for (Thread thread : threads) {
+				thread.start();
+			}
+		}
+
+		/**
+		 * Adds a batch to the queue of this stage, waiting for space if needed.
+		 *
+		 * @param batch the batch to add
+		 */
+		public void put(Batch batch) {
+			try {
+				queue.put(batch);
+			} catch (InterruptedException e) {
+				log.catching(Level.DEBUG, e);
+				Thread.currentThread().interrupt();
+				return;
+			}
+
+			if (batch != END) {
+				int size = queue.size();
+				occupancy.add(size);
+				added.increment();
+				if (size > peak) {
+					peak = size;
+				}
+			}
+		}
+
+		/**
+		 * Tells every thread of this stage that no more batches are coming.
+		 */
+		public void close() {
+			for (int i = 0; i < threads.length; i++) {
+				put(END);
+			}
+		}
+
+		/**
+		 * Waits for every thread of this stage to finish.
+		 */
+		public void await() {
+			try {
+				for (Thread thread : threads) {
+					thread.join();
+				}
+			} catch (InterruptedException e) {
+				log.catching(Level.DEBUG, e);
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Takes and processes batches until the end of the input. The last thread
+		 * of the stage to finish closes the next stage and waits for it.
+		 */
+		private void work() {
+			try {
+				Batch batch;
+				while ((batch = queue.take()) != END) {
+					long start = System.nanoTime();
+
+					try {
+						items.add(process(batch));
+					} catch (RuntimeException e) {
+						System.err.printf("Warning: Pipeline thread %s encountered an exception while running.%n",
+								Thread.currentThread().getName());
+						log.catching(Level.DEBUG, e);
+					}
+
+					busy.add(System.nanoTime() - start);
+					batches.increment();
+				}
+			} catch (InterruptedException e) {
+				log.catching(Level.DEBUG, e);
+				Thread.currentThread().interrupt();
+			}
+
+			if (running.decrementAndGet() == 0) {
+				stopped = System.nanoTime();
+				if (next != null) {
+					next.close();
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			double seconds = Math.max(1, (stopped > 0 ? stopped : System.nanoTime()) - started) / 1e9;
+			double busySeconds = busy.sum() / 1e9;
+			long count = added.sum();
+			double average = count == 0 ? 0 : (double) occupancy.sum() / count;
+			double utilization = busySeconds / (seconds * threads.length) * 100;
+
+			return String.format(
+					"%-8s threads=%d batches=%d items=%d items/s=%.0f busy=%.1f%% queue avg=%.1f peak=%d/%d", name,
+					threads.length, batches.sum(), items.sum(), items.sum() / seconds, utilization, average, peak,
+					queue.remainingCapacity() + queue.size());
+		}
+	}
+}
@@ -3,12 +3,16 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.ToIntFunction;
 
 /**
  * @author Jadon Huang
@@ -17,6 +21,11 @@ import java.util.TreeSet;
  *         structure manipulation methods
  */
 public class InvertedIndex {
+	/**
+	 * Long search loops check their deadline each time this many steps pass
+	 */
+	private static final int CHECK_MASK = (1 << 10) - 1;
+
 	/**
 	 * Map of String text file paths and Integer word count
 	 */
@@ -28,6 +37,27 @@ public class InvertedIndex {
 	 */
 	private TreeMap<String, TreeMap<String, TreeSet<Integer>>> wordMap;
 
+	/**
+	 * Dense document id of every location, assigned in the order locations are
+	 * first added
+	 */
+	private final HashMap<String, Integer> documentIds;
+
+	/**
+	 * Location of each document id
+	 */
+	private final ArrayList<String> documents;
+
+	/**
+	 * Most words a single partial search query may expand to, or 0 for no limit
+	 */
+	private int expansionLimit;
+
+	/**
+	 * Default time budget of a single search in milliseconds, or 0 for none
+	 */
+	private volatile long searchTimeout;
+
 	/**
 	 * Creates type InvertedIndex that takes in data structures for passing into
 	 * builder
@@ -35,6 +65,28 @@ public class InvertedIndex {
 	public InvertedIndex() {
 		this.wordMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 		this.countMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		this.documentIds = new HashMap<>();
+		this.documents = new ArrayList<>();
+		this.expansionLimit = 0;
+		this.searchTimeout = 0;
+	}
+
+	/**
+	 * Returns the dense document id of a location, assigning the next id if the
+	 * location is new.
+	 * 
+	 * @param filePath the location
+	 * @return the document id
+	 */
+	private int documentId(String filePath) {
+		Integer id = documentIds.get(filePath);
+
+		if (id == null) {
+			id = documents.size();
+			documentIds.put(filePath, id);
+			documents.add(filePath);
+		}
+		return id;
 	}
 
 	/**
@@ -45,11 +97,13 @@ public class InvertedIndex {
 	 * @param counter  the index at which word was located within filePath
 	 */
 	public void add(String word, String filePath, Integer counter) {
+		word = SymbolTable.TERMS.intern(word);
 
 		wordMap.putIfAbsent(word, new TreeMap<>());
 		wordMap.get(word).putIfAbsent(filePath, new TreeSet<Integer>());
 		wordMap.get(word).get(filePath).add(counter);
 		countMap.put(filePath, counter);
+		documentId(filePath);
 	}
 
 	/**
@@ -58,6 +112,10 @@ public class InvertedIndex {
 	 * @param index the Inverted Index class index to add to
 	 */
 	public void addAll(InvertedIndex index) {
+		for (String location : index.documents) {
+			documentId(location);
+		}
+
 		for (String key : index.wordMap.keySet()) {
 			if (this.wordMap.containsKey(key)) {
 				for (String locations : index.wordMap.get(key).keySet()) {
@@ -89,29 +147,132 @@ public class InvertedIndex {
 	}
 
 	/**
-	 * general addAll method
+	 * general addAll method, numbering the stems from 1 like the stems of a file
 	 *
 	 * @param stems word in the file
 	 * @param path  file path of the file
 	 */
 	public void addAll(List<String> stems, String path) {
-		addAll(stems, path, 0);
+		addAll(stems, path, 1);
 	}
 
 	/**
 	 * adds the path of the file and all of the indexes that word appears at in the
-	 * file
+	 * file. The stems are grouped by word first, so each word and the word count
+	 * of the file are only updated once.
 	 *
 	 * @param stems stems word in the file
 	 * @param path  path file path of the file
 	 * @param start the integer to start at
 	 */
 	public void addAll(List<String> stems, String path, int start) {
+		if (!stems.isEmpty()) {
+			addPostings(groupPositions(stems, start), path, start + stems.size() - 1);
+		}
+	}
+
+	/**
+	 * Groups the positions of a document's stems by stem.
+	 *
+	 * @param stems the stems of the document in order
+	 * @param start the position of the first stem
+	 * @return map of each stem to its positions in increasing order
+	 */
+	public static Map<String, List<Integer>> groupPositions(List<String> stems, int start) {
+		HashMap<String, List<Integer>> postings = new HashMap<>();
+
 		for (int i = 0; i < stems.size(); i++) {
-			add(path, stems.get(i), start + i);
+			postings.computeIfAbsent(stems.get(i), word -> new ArrayList<>()).add(start + i);
+		}
+		return postings;
+	}
+
+	/**
+	 * Adds the positions of every word in a single document and sets the word
+	 * count of the document. New words are interned, so equal strings are stored
+	 * once across indexes.
+	 *
+	 * @param postings map of each word to its positions in the document
+	 * @param filePath the location of the document
+	 * @param count    the word count of the document
+	 * @see SymbolTable
+	 */
+	public void addPostings(Map<String, ? extends Collection<Integer>> postings, String filePath, Integer count) {
+		documentId(filePath);
+
+		for (var entry : postings.entrySet()) {
+			TreeMap<String, TreeSet<Integer>> locations = wordMap.get(entry.getKey());
+
+			if (locations == null) {
+				locations = new TreeMap<>();
+				wordMap.put(SymbolTable.TERMS.intern(entry.getKey()), locations);
+			}
+
+			TreeSet<Integer> positions = locations.get(filePath);
+
+			if (positions == null) {
+				locations.put(filePath, new TreeSet<>(entry.getValue()));
+			} else {
+				positions.addAll(entry.getValue());
+			}
+		}
+		countMap.put(filePath, count);
+	}
+
+	/**
+	 * Adds the locations and positions of many words at once, such as the words
+	 * read back from a written index, without changing any word count. The maps
+	 * of words that are new to the index are kept as given rather than copied,
+	 * so they must not be changed afterwards and their locations should already
+	 * be interned.
+	 *
+	 * @param terms map of each word to its positions at each location
+	 * @see SymbolTable
+	 */
+	public void addTerms(Map<String, TreeMap<String, TreeSet<Integer>>> terms) {
+		for (var entry : terms.entrySet()) {
+			TreeMap<String, TreeSet<Integer>> locations = wordMap.get(entry.getKey());
+
+			for (String location : entry.getValue().keySet()) {
+				documentId(location);
+			}
+
+			if (locations == null) {
+				wordMap.put(SymbolTable.TERMS.intern(entry.getKey()), entry.getValue());
+				continue;
+			}
+
+			for (var location : entry.getValue().entrySet()) {
+				TreeSet<Integer> positions = locations.get(location.getKey());
+
+				if (positions == null) {
+					locations.put(location.getKey(), location.getValue());
+				} else {
+					positions.addAll(location.getValue());
+				}
+			}
 		}
 	}
 
+	/**
+	 * Sets the word count of a location.
+	 *
+	 * @param filePath the location
+	 * @param count    the word count of the location
+	 */
+	public void setCount(String filePath, int count) {
+		documentId(filePath);
+		countMap.put(filePath, count);
+	}
+
+	/**
+	 * Removes every word and its locations, keeping the word count of each
+	 * location. Used by indexes that move their postings somewhere else.
+	 */
+	protected void clearWords() {
+		wordMap.clear();
+	}
+
 	/**
 	 * get count to return word count
 	 * 
@@ -241,7 +402,20 @@ public class InvertedIndex {
 	 * @return the result search method
 	 */
 	public ArrayList<QuerySearchResults> search(TreeSet<String> query, boolean exact) {
-		return exact ? exactSearch(query) : partialSearch(query);
+		return search(query, exact, Deadline.after(searchTimeout));
+	}
+
+	/**
+	 * search method with its own time budget. A search that runs out of time
+	 * returns what it found so far, marked as truncated.
+	 * 
+	 * @param query    the treeset of queries to search through
+	 * @param exact    the boolean to determine exact or partial search
+	 * @param deadline the time budget of the search
+	 * @return the result search method
+	 */
+	public ArrayList<QuerySearchResults> search(TreeSet<String> query, boolean exact, Deadline deadline) {
+		return exact ? exactSearch(query, deadline) : partialSearch(query, deadline);
 	}
 
 	/**
@@ -251,13 +425,18 @@ public class InvertedIndex {
 	 * @return returns query search results
 	 */
 	public ArrayList<QuerySearchResults> exactSearch(TreeSet<String> queries) {
-		ArrayList<QuerySearchResults> querySR = new ArrayList<>();
-		TreeMap<String, QuerySearchResults> tempMap = new TreeMap<>();
-		for (String query : queries) {
-			buildMethod(query, querySR, tempMap);
-		}
-		Collections.sort(querySR);
-		return querySR;
+		return exactSearch(queries, Deadline.after(searchTimeout));
+	}
+
+	/**
+	 * exact seach to match exact word stem within a time budget
+	 * 
+	 * @param queries  treeset of queries to search through
+	 * @param deadline the time budget of the search
+	 * @return returns query search results
+	 */
+	public ArrayList<QuerySearchResults> exactSearch(TreeSet<String> queries, Deadline deadline) {
+		return score(new ArrayList<>(queries), false, deadline);
 	}
 
 	/**
@@ -267,46 +446,394 @@ public class InvertedIndex {
 	 * @return returns query search results
 	 */
 	public ArrayList<QuerySearchResults> partialSearch(TreeSet<String> queries) {
-		ArrayList<QuerySearchResults> querySR = new ArrayList<>();
-		TreeMap<String, QuerySearchResults> tempMap = new TreeMap<>();
+		return partialSearch(queries, Deadline.after(searchTimeout));
+	}
+
+	/**
+	 * exact seach to search word that begins with stem within a time budget
+	 * 
+	 * @param queries  treeset of queries to search through
+	 * @param deadline the time budget of the search
+	 * @return returns query search results
+	 */
+	public ArrayList<QuerySearchResults> partialSearch(TreeSet<String> queries, Deadline deadline) {
+		List<String> words = new ArrayList<>();
+		boolean truncated = expand(queries, words, deadline);
+		return score(words, truncated, deadline);
+	}
+
+	/**
+	 * Adds up the words and ranks the matching documents.
+	 * 
+	 * @param words     the words to add up, including repeats
+	 * @param truncated whether some matching words were already left out
+	 * @param deadline  the time budget of the search
+	 * @return the sorted search results
+	 */
+	protected SearchResults score(List<String> words, boolean truncated, Deadline deadline) {
+		ScoreAccumulator scores = ScoreAccumulator.local(documents.size());
+		accumulate(words, 0, words.size(), scores, deadline);
+
+		SearchResults results = rank(scores);
+		results.setTruncated(truncated || deadline.isExpired());
+		return results;
+	}
+
+	/**
+	 * Searches a block of queries together. Each distinct query stem is expanded
+	 * and the postings of each word are read out of the index once for the whole
+	 * block, then every query is scored from the shared postings. Gives the same
+	 * results as searching each query on its own.
+	 * 
+	 * @param queries the stemmed queries to search
+	 * @param exact   the boolean to determine exact or partial search
+	 * @return the search results of each query, in the same order
+	 */
+	public List<ArrayList<QuerySearchResults>> searchBatch(List<TreeSet<String>> queries, boolean exact) {
+		Map<String, Expansion> expansions = new HashMap<>();
+		Map<String, Postings> postings = new HashMap<>();
+		int[] totals = new int[documents.size()];
+		List<ArrayList<QuerySearchResults>> results = new ArrayList<>(queries.size());
+
+		for (TreeSet<String> query : queries) {
+			Deadline deadline = Deadline.after(searchTimeout);
+			ScoreAccumulator scores = ScoreAccumulator.local(documents.size());
+			boolean truncated = false;
+
+			search: for (String stem : query) {
+				Expansion expansion = exact ? null : expansions.get(stem);
+				if (!exact && expansion == null) {
+					expansion = expansion(stem, deadline);
+
+					// an expansion cut short by this query's deadline is not reused
+					if (!deadline.isExpired()) {
+						expansions.put(stem, expansion);
+					}
+				}
+				List<String> words = exact ? List.of(stem) : expansion.words;
+				truncated |= !exact && expansion.truncated;
+
+				for (String word : words) {
+					if (deadline.check()) {
+						break search;
+					}
+					postings.computeIfAbsent(word, this::postings).addTo(scores);
+				}
+			}
+
+			SearchResults ranked = rank(scores, totals);
+			ranked.setTruncated(truncated || deadline.isExpired());
+			results.add(ranked);
+		}
+		return results;
+	}
+
+	/**
+	 * Expands a single query stem for a batch search.
+	 * 
+	 * @param stem     the query stem
+	 * @param deadline the time budget of the query being searched
+	 * @return the indexed words starting with the stem
+	 */
+	private Expansion expansion(String stem, Deadline deadline) {
+		List<String> words = new ArrayList<>();
+		boolean truncated = expand(new TreeSet<>(List.of(stem)), words, deadline);
+		return new Expansion(words, truncated);
+	}
+
+	/**
+	 * Reads the postings of a word for a batch search.
+	 * 
+	 * @param word the indexed word
+	 * @return the number of positions at each document, in location order
+	 */
+	private Postings postings(String word) {
+		TreeMap<String, TreeSet<Integer>> locations = wordMap.get(word);
+
+		if (locations == null) {
+			return new Postings(new int[0], new int[0]);
+		}
+
+		Postings found = new Postings(new int[locations.size()], new int[locations.size()]);
+		int i = 0;
+		for (var location : locations.entrySet()) {
+			found.documents[i] = documentIds.get(location.getKey());
+			found.counts[i] = location.getValue().size();
+			i++;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the default time budget of a single search.
+	 * 
+	 * @return the search timeout in milliseconds, or 0 if there is none
+	 */
+	public long getSearchTimeout() {
+		return searchTimeout;
+	}
+
+	/**
+	 * Sets the default time budget of a single search. A search that runs out of
+	 * time stops early and returns what it found so far, marked as truncated.
+	 * 
+	 * @param searchTimeout the search timeout in milliseconds, or 0 for none
+	 * @see Deadline
+	 */
+	public void setSearchTimeout(long searchTimeout) {
+		this.searchTimeout = Math.max(0, searchTimeout);
+	}
+
+	/**
+	 * Returns the most words a single partial search query may expand to.
+	 * 
+	 * @return the expansion limit, or 0 if there is no limit
+	 */
+	public int getExpansionLimit() {
+		return expansionLimit;
+	}
+
+	/**
+	 * Sets the most words a single partial search query may expand to. A query
+	 * that matches more words only adds up the words found in the most
+	 * locations, and its results are marked as truncated.
+	 * 
+	 * @param expansionLimit the expansion limit, or 0 for no limit
+	 * @see SearchResults#isTruncated()
+	 */
+	public void setExpansionLimit(int expansionLimit) {
+		this.expansionLimit = Math.max(0, expansionLimit);
+	}
+
+	/**
+	 * Lists the words a partial search adds up, in the order it adds them. A word
+	 * is listed once for every query it starts with. A query matching more words
+	 * than the expansion limit only keeps the words found in the most locations.
+	 * 
+	 * @param queries  treeset of queries to expand
+	 * @param words    the list to add the indexed words starting with each query
+	 *                 to, including repeats
+	 * @param deadline the time budget of the search, checked while expanding
+	 * @return true if any query was cut down to the expansion limit or the
+	 *         deadline passed
+	 */
+	protected boolean expand(TreeSet<String> queries, List<String> words, Deadline deadline) {
+		boolean truncated = false;
+
 		for (String query : queries) {
-			for (String partial : wordMap.tailMap(query).keySet()) {
-				if (!partial.startsWith(query)) {
+			int first = words.size();
+
+			if (deadline.check()) {
+				return true;
+			}
+
+			for (var partial : wordMap.tailMap(query).entrySet()) {
+				if (!partial.getKey().startsWith(query)) {
 					break;
 				}
-				buildMethod(partial, querySR, tempMap);
+				words.add(partial.getKey());
+
+				if ((words.size() & CHECK_MASK) == 0 && deadline.check()) {
+					return true;
+				}
+			}
+
+			if (expansionLimit > 0 && words.size() - first > expansionLimit) {
+				limit(words.subList(first, words.size()), expansionLimit, word -> wordMap.get(word).size());
+				truncated = true;
 			}
 		}
-		Collections.sort(querySR);
-		return querySR;
+		return truncated;
+	}
+
+	/**
+	 * Cuts the words down to the given number of words found in the most
+	 * locations, keeping them in their original order. Ties keep the earlier
+	 * word.
+	 * 
+	 * @param words     the words to cut down
+	 * @param limit     the number of words to keep
+	 * @param locations the number of locations each word is found in
+	 */
+	protected static void limit(List<String> words, int limit, ToIntFunction<String> locations) {
+		int[] frequency = new int[words.size()];
+		for (int i = 0; i < frequency.length; i++) {
+			frequency[i] = locations.applyAsInt(words.get(i));
+		}
+
+		// heap of the best words so far, with the worst of them at the top
+		int[] heap = new int[limit];
+		int size = 0;
+
+		for (int i = 0; i < frequency.length; i++) {
+			if (size < limit) {
+				heap[size] = i;
+				siftUp(heap, size++, frequency);
+			} else if (frequency[i] > frequency[heap[0]]) {
+				heap[0] = i;
+				siftDown(heap, size, frequency);
+			}
+		}
+
+		Arrays.sort(heap, 0, size);
+
+		ArrayList<String> kept = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			kept.add(words.get(heap[i]));
+		}
+
+		words.clear();
+		words.addAll(kept);
+	}
+
+	/**
+	 * Returns whether the first word ranks below the second, by fewer locations
+	 * or, on a tie, by coming later.
+	 *
+	 * @param a         the index of the first word
+	 * @param b         the index of the second word
+	 * @param frequency the number of locations of each word
+	 * @return true if the first word ranks below the second
+	 */
+	private static boolean worse(int a, int b, int[] frequency) {
+		return frequency[a] != frequency[b] ? frequency[a] < frequency[b] : a > b;
+	}
+
+	/**
+	 * Moves a newly added word up the heap until its parent ranks below it.
+	 *
+	 * @param heap      the word indices in the heap
+	 * @param position  the position of the added word
+	 * @param frequency the number of locations of each word
+	 */
+	private static void siftUp(int[] heap, int position, int[] frequency) {
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (!worse(heap[position], heap[parent], frequency)) {
+				return;
+			}
+			int swap = heap[parent];
+			heap[parent] = heap[position];
+			heap[position] = swap;
+			position = parent;
+		}
+	}
+
+	/**
+	 * Moves a replaced top word down the heap until no child ranks below it.
+	 *
+	 * @param heap      the word indices in the heap
+	 * @param size      the number of words in the heap
+	 * @param frequency the number of locations of each word
+	 */
+	private static void siftDown(int[] heap, int size, int[] frequency) {
+		int position = 0;
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size) {
+				return;
+			}
+			if (child + 1 < size && worse(heap[child + 1], heap[child], frequency)) {
+				child++;
+			}
+			if (!worse(heap[child], heap[position], frequency)) {
+				return;
+			}
+			int swap = heap[child];
+			heap[child] = heap[position];
+			heap[position] = swap;
+			position = child;
+		}
 	}
 
 	/**
-	 * Repeated build method code in both exact search and partial search
+	 * Returns the number of document ids assigned so far.
 	 * 
-	 * @param queryPart query to check in map
-	 * @param querySR   query search result structure
-	 * @param temprMap  temp map to check duplicates
+	 * @return the number of documents
 	 */
-	public void buildMethod(String queryPart, List<QuerySearchResults> querySR,
-			Map<String, QuerySearchResults> temprMap) {
+	protected int documentCount() {
+		return documents.size();
+	}
 
-		if (wordMap.containsKey(queryPart)) {
+	/**
+	 * Adds up the number of positions of a range of words at each document.
+	 * Documents are kept in the order they are first found.
+	 * 
+	 * @param words    the words to add up
+	 * @param start    the first word in the range
+	 * @param end      the end of the range, exclusive
+	 * @param scores   the number of matches found so far at each document
+	 * @param deadline the time budget of the search, checked before each word
+	 *                 and while adding up long posting lists
+	 */
+	protected void accumulate(List<String> words, int start, int end, ScoreAccumulator scores,
+			Deadline deadline) {
+		for (int i = start; i < end; i++) {
+			if (deadline.check()) {
+				return;
+			}
 
-			for (String filePath : wordMap.get(queryPart).keySet()) {
-				QuerySearchResults result = new QuerySearchResults(filePath);
+			TreeMap<String, TreeSet<Integer>> locations = wordMap.get(words.get(i));
 
-				if (!temprMap.containsKey(filePath)) {
-					querySR.add(result);
-					temprMap.put(filePath, result);
-					temprMap.get(filePath).countUpdate(queryPart);
+			if (locations != null) {
+				int seen = 0;
+				for (var location : locations.entrySet()) {
+					scores.add(documentIds.get(location.getKey()), location.getValue().size());
+
+					if ((++seen & CHECK_MASK) == 0 && deadline.check()) {
+						return;
+					}
 				}
+			}
+		}
+	}
 
-				else if (temprMap.containsKey(filePath)) {
-					temprMap.get(filePath).countUpdate(queryPart);
+	/**
+	 * Creates the sorted search results for the touched documents and clears the
+	 * accumulator. Results are only created here, once per matching document.
+	 * 
+	 * @param scores the number of matches at each document, in the order found
+	 * @return the sorted search results
+	 */
+	protected SearchResults rank(ScoreAccumulator scores) {
+		return rank(scores, null);
+	}
+
+	/**
+	 * Creates the sorted search results for the touched documents and clears the
+	 * accumulator, remembering the word count of each document looked up.
+	 * 
+	 * @param scores the number of matches at each document, in the order found
+	 * @param totals the word count of each document id, 0 if not looked up yet,
+	 *               or null to look up every count
+	 * @return the sorted search results
+	 */
+	private SearchResults rank(ScoreAccumulator scores, int[] totals) {
+		SearchResults querySR = new SearchResults(scores.size());
+
+		for (int i = 0; i < scores.size(); i++) {
+			int document = scores.document(i);
+			int count = scores.count(document);
+			String location = documents.get(document);
+			int total;
+
+			if (totals == null) {
+				total = countMap.get(location);
+			} else {
+				if (totals[document] == 0) {
+					totals[document] = countMap.get(location);
 				}
+				total = totals[document];
 			}
+
+			QuerySearchResults result = new QuerySearchResults(location);
+			result.callNumbers(count, (double) count / Double.valueOf(total));
+			querySR.add(result);
 		}
+
+		scores.clear();
+		Collections.sort(querySR);
+		return querySR;
 	}
 
 	@Override
@@ -324,7 +851,19 @@ public class InvertedIndex {
 	 * @throws IOException to throw
 	 */
 	public void mapJson(Path path) throws IOException {
-		JsonWriter.writeNestedArray(this.wordMap, path);
+		FastJsonWriter.writeNestedArray(this.wordMap, path);
+	}
+
+	/**
+	 * to write to JSON format for nested map, encoding chunks of words on the
+	 * work queue
+	 * 
+	 * @param path   the file path
+	 * @param queuer the work queue to encode chunks with
+	 * @throws IOException to throw
+	 */
+	public void mapJson(Path path, TaskQueue queuer) throws IOException {
+		ParallelJsonExport.writeNestedArray(this.wordMap, path, queuer);
 	}
 
 	/**
@@ -335,7 +874,93 @@ public class InvertedIndex {
 	 */
 	public void wordCountJson(Path path) throws IOException {
 		// System.out.println("countmap: " + this.countMap);
-		JsonWriter.writeObject(this.countMap, path);
+		FastJsonWriter.writeObject(this.countMap, path);
+	}
+
+	/**
+	 * to write the nested map in the given format
+	 * 
+	 * @param path   the file path
+	 * @param format the output format
+	 * @throws IOException to throw
+	 */
+	public void writeIndex(Path path, OutputFormat format) throws IOException {
+		if (format == OutputFormat.JSON) {
+			mapJson(path);
+		} else {
+			RecordWriter.writeIndex(this.wordMap, path, format);
+		}
+	}
+
+	/**
+	 * to write the count map in the given format
+	 * 
+	 * @param path   the file path
+	 * @param format the output format
+	 * @throws IOException to throw
+	 */
+	public void writeCounts(Path path, OutputFormat format) throws IOException {
+		if (format == OutputFormat.JSON) {
+			wordCountJson(path);
+		} else {
+			RecordWriter.writeCounts(this.countMap, path, format);
+		}
+	}
+
+	/**
+	 * The words a query stem expands to in a batch search.
+	 */
+	private static class Expansion {
+		/** The indexed words starting with the stem. */
+		private final List<String> words;
+
+		/** Whether the words were cut down to the expansion limit. */
+		private final boolean truncated;
+
+		/**
+		 * Creates an expansion.
+		 * 
+		 * @param words     the indexed words starting with the stem
+		 * @param truncated whether the words were cut down to the expansion limit
+		 */
+		private Expansion(List<String> words, boolean truncated) {
+			this.words = words;
+			this.truncated = truncated;
+		}
+	}
+
+	/**
+	 * The postings of a word read once and shared by every query in a batch
+	 * search.
+	 */
+	private static class Postings {
+		/** The document id of each location, in location order. */
+		private final int[] documents;
+
+		/** The number of positions at each location. */
+		private final int[] counts;
+
+		/**
+		 * Creates postings.
+		 * 
+		 * @param documents the document id of each location
+		 * @param counts    the number of positions at each location
+		 */
+		private Postings(int[] documents, int[] counts) {
+			this.documents = documents;
+			this.counts = counts;
+		}
+
+		/**
+		 * Adds the positions at each location to the scores.
+		 * 
+		 * @param scores the number of matches found so far at each document
+		 */
+		private void addTo(ScoreAccumulator scores) {
+			for (int i = 0; i < documents.length; i++) {
+				scores.add(documents[i], counts[i]);
+			}
+		}
 	}
 
 	/**
@@ -367,7 +992,6 @@ public class InvertedIndex {
 		 * @param filePath takes in file path to return word count, path, frequency
 		 */
 		public QuerySearchResults(String filePath) {
-			new InvertedIndex();
 			// this.wordCount = wordCount;
 			this.filePath = filePath;
 			// this.wordFreq = wordFreq;
@@ -399,16 +1023,6 @@ public class InvertedIndex {
 			return this.filePath.compareToIgnoreCase(object.filePath);
 		}
 
-		/**
-		 * count update to calculate update word count and frequency score
-		 * 
-		 * @param query the word query
-		 */
-		private void countUpdate(String query) {
-			this.wordCount += sizeIndex(query, filePath);
-			this.wordFreq = (double) wordCount / Double.valueOf(getCount(filePath));
-		}
-
 		/**
 		 * @return return file path
 		 */
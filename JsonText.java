@@ -0,0 +1,95 @@
+package edu.usfca.cs272;
+
+/**
+ * Decodes the text of JSON strings for the readers of the written files, so
+ * {@link IndexLoader} and {@link RecordReader} treat escape sequences the same
+ * way.
+ *
+ * @author Jadon Huang
+ */
+public class JsonText {
+	/** Prevent instantiating this class of static methods. */
+	private JsonText() {
+	}
+
+	/**
+	 * Returns the index of the quote that ends a JSON string, skipping escaped
+	 * characters.
+	 *
+	 * @param text  the text holding the string
+	 * @param start the index of the first character after the opening quote
+	 * @return the index of the closing quote
+	 * @throws IllegalArgumentException if the string is not terminated
+	 */
+	public static int closingQuote(String text, int start) {
+		int index = start;
+
+		while (index < text.length() && text.charAt(index) != '"') {
+			index += text.charAt(index) == '\\' ? 2 : 1;
+		}
+
+		if (index >= text.length()) {
+			throw new IllegalArgumentException("Unterminated string at " + start);
+		}
+		return index;
+	}
+
+	/**
+	 * Replaces the escape sequences of the text of a JSON string.
+	 *
+	 * @param text  the text holding the string
+	 * @param start the index of the first character of the string
+	 * @param end   the index after the last character, usually the closing quote
+	 * @return the string without escape sequences
+	 * @throws IllegalArgumentException if an escape sequence is malformed or cut
+	 *                                  off
+	 */
+	public static String unescape(String text, int start, int end) {
+		int escape = start;
+		while (escape < end && text.charAt(escape) != '\\') {
+			escape++;
+		}
+
+		if (escape == end) {
+			return text.substring(start, end);
+		}
+
+		StringBuilder builder = new StringBuilder(end - start);
+		builder.append(text, start, escape);
+
+		for (int i = escape; i < end; i++) {
+			char c = text.charAt(i);
+
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+
+			if (++i >= end) {
+				throw new IllegalArgumentException("Cut off escape at " + (i - 1));
+			}
+
+			c = text.charAt(i);
+			switch (c) {
+				case 'b' -> builder.append('\b');
+				case 'f' -> builder.append('\f');
+				case 'n' -> builder.append('\n');
+				case 'r' -> builder.append('\r');
+				case 't' -> builder.append('\t');
+				case 'u' -> {
+					if (i + 4 >= end) {
+						throw new IllegalArgumentException("Cut off unicode escape at " + (i - 1));
+					}
+					try {
+						builder.append((char) Integer.parseInt(text, i + 1, i + 5, 16));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Bad unicode escape at " + (i - 1), e);
+					}
+					i += 4;
+				}
+				default -> builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,39 @@
+package edu.usfca.cs272;
+
+import java.util.Locale;
+
+/**
+ * The file formats the index, word counts, and search results can be written
+ * in.
+ *
+ * @author Jadon Huang
+ */
+public enum OutputFormat {
+	/** Pretty JSON, one document for the whole file. */
+	JSON,
+
+	/** Compact JSON with one word, location, or query per line. */
+	NDJSON,
+
+	/** Length-prefixed binary records, see {@link RecordWriter}. */
+	BINARY;
+
+	/**
+	 * Returns the format with the given name, ignoring case.
+	 *
+	 * @param name   the name of the format, such as {@code ndjson}
+	 * @param backup the format to return if the name is null or unknown
+	 * @return the format
+	 */
+	public static OutputFormat of(String name, OutputFormat backup) {
+		if (name == null) {
+			return backup;
+		}
+
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return backup;
+		}
+	}
+}
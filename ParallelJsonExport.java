@@ -0,0 +1,321 @@
+package edu.usfca.cs272;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes a sorted map of nested arrays as the same pretty JSON as
+ * {@link JsonWriter#writeNestedArray(Map, Path)} using several threads. The
+ * entries are split into chunks of about {@link #CHUNK_BYTES} bytes, each chunk
+ * is encoded into its own buffer by a worker, and the buffers are written at
+ * their place in the file with positional writes as soon as every earlier
+ * chunk has been encoded. Only a few chunks are held in memory at a time.
+ *
+ * When the file name ends in {@code .gz}, each worker also compresses its chunk
+ * into an independent gzip member, so compression runs in parallel too. The
+ * members one after another form a valid gzip file.
+ *
+ * The map must not change until the export is done.
+ *
+ * @author Jadon Huang
+ */
+public class ParallelJsonExport {
+	/** About how many bytes of JSON each chunk should hold. */
+	public static final long CHUNK_BYTES = 1 << 20;
+
+	/** The file being written. */
+	private final FileChannel channel;
+
+	/** Whether each chunk is compressed into its own gzip member. */
+	private final boolean compressed;
+
+	/** Limits the number of chunks encoded but not yet written. */
+	private final Semaphore permits;
+
+	/** Encoded chunks waiting for an earlier chunk, by chunk number. */
+	private final TreeMap<Integer, byte[]> waiting;
+
+	/** The next chunk to be given a place in the file. */
+	private int next;
+
+	/** Where the next chunk starts in the file. */
+	private long offset;
+
+	/** The first error found by a worker, if any. */
+	private IOException failure;
+
+	/**
+	 * Creates an export to an open file.
+	 *
+	 * @param channel    the file to write
+	 * @param compressed whether to compress each chunk into a gzip member
+	 * @param inFlight   the most chunks encoded but not yet written
+	 */
+	private ParallelJsonExport(FileChannel channel, boolean compressed, int inFlight) {
+		this.channel = channel;
+		this.compressed = compressed;
+		this.permits = new Semaphore(Math.max(1, inFlight));
+		this.waiting = new TreeMap<>();
+		this.next = 0;
+		this.offset = 0;
+		this.failure = null;
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with nested arrays to file,
+	 * encoding chunks of the elements on the work queue.
+	 *
+	 * @param elements the sorted elements to write
+	 * @param path     the file path to use
+	 * @param queuer   the work queue to encode chunks with
+	 * @throws IOException if an IO error occurs
+	 *
+	 * @see JsonWriter#writeNestedArray(Map, Path)
+	 */
+	public static void writeNestedArray(
+			Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements, Path path,
+			TaskQueue queuer) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, WRITE, CREATE, TRUNCATE_EXISTING)) {
+			boolean compressed = Compression.isCompressed(path);
+			ParallelJsonExport export = new ParallelJsonExport(channel, compressed, queuer.size() * 2);
+
+			try {
+				export.submit(elements, queuer);
+			} finally {
+				queuer.finish();
+			}
+
+			long end;
+			synchronized (export) {
+				if (export.failure != null) {
+					throw export.failure;
+				}
+				end = export.offset;
+			}
+
+			byte[] last = "\n}".getBytes(UTF_8);
+			write(channel, compressed ? Compression.gzip(last) : last, end);
+		}
+	}
+
+	/**
+	 * Splits the elements into chunks and submits a task for each.
+	 *
+	 * @param elements the sorted elements to write
+	 * @param queuer   the work queue to encode chunks with
+	 * @throws IOException if interrupted while waiting for a chunk to be written
+	 */
+	private void submit(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements,
+			TaskQueue queuer) throws IOException {
+		List<Map.Entry<String, ? extends Map<String, ? extends Collection<? extends Number>>>> chunk = new ArrayList<>();
+		int chunks = 0;
+		long size = 0;
+
+		for (var entry : elements.entrySet()) {
+			chunk.add(entry);
+			size += estimate(entry.getKey(), entry.getValue());
+
+			if (size >= CHUNK_BYTES) {
+				execute(queuer, new ChunkTask(chunks++, chunk));
+				chunk = new ArrayList<>();
+				size = 0;
+			}
+		}
+
+		if (!chunk.isEmpty() || chunks == 0) {
+			execute(queuer, new ChunkTask(chunks++, chunk));
+		}
+	}
+
+	/**
+	 * Waits until fewer chunks are in flight and submits the task.
+	 *
+	 * @param queuer the work queue to use
+	 * @param task   the task to submit
+	 * @throws IOException if interrupted while waiting
+	 */
+	private void execute(TaskQueue queuer, ChunkTask task) throws IOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while exporting");
+		}
+		queuer.execute(task);
+	}
+
+	/**
+	 * Guesses how many bytes an entry takes as JSON, used to size the chunks.
+	 *
+	 * @param key   the key of the entry
+	 * @param value the nested arrays of the entry
+	 * @return the estimated size in bytes
+	 */
+	private static long estimate(String key, Map<String, ? extends Collection<? extends Number>> value) {
+		long size = key.length() + 12;
+		for (var nested : value.entrySet()) {
+			size += nested.getKey().length() + 24 + 12L * nested.getValue().size();
+		}
+		return size;
+	}
+
+	/**
+	 * Records an encoded chunk and collects the chunks that now have a place in
+	 * the file, in order.
+	 *
+	 * @param number the chunk number
+	 * @param bytes  the encoded chunk
+	 * @param placed the list to add the chunks that now have a place to
+	 * @return where the first collected chunk starts in the file
+	 */
+	private synchronized long place(int number, byte[] bytes, List<byte[]> placed) {
+		long start = offset;
+		waiting.put(number, bytes);
+
+		while (!waiting.isEmpty() && waiting.firstKey() == next) {
+			byte[] ready = waiting.pollFirstEntry().getValue();
+			placed.add(ready);
+			offset += ready.length;
+			next++;
+		}
+		return start;
+	}
+
+	/**
+	 * Returns whether a worker already found an error.
+	 *
+	 * @return true if the export failed
+	 */
+	private synchronized boolean failed() {
+		return failure != null;
+	}
+
+	/**
+	 * Records the first error found by a worker.
+	 *
+	 * @param e the error
+	 */
+	private synchronized void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Writes all the bytes at the given place in the file.
+	 *
+	 * @param channel  the file to write
+	 * @param bytes    the bytes to write
+	 * @param position where in the file to write them
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void write(FileChannel channel, byte[] bytes, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Task that encodes a chunk of entries, then writes every chunk that has a
+	 * place in the file.
+	 */
+	private class ChunkTask implements Runnable {
+		/** The chunk number, in file order. */
+		private final int number;
+
+		/** The entries of the chunk. */
+		private final List<Map.Entry<String, ? extends Map<String, ? extends Collection<? extends Number>>>> entries;
+
+		/**
+		 * Creates a task for a chunk.
+		 *
+		 * @param number  the chunk number, in file order
+		 * @param entries the entries of the chunk
+		 */
+		private ChunkTask(int number,
+				List<Map.Entry<String, ? extends Map<String, ? extends Collection<? extends Number>>>> entries) {
+			this.number = number;
+			this.entries = entries;
+		}
+
+		@Override
+		public void run() throws UncheckedIOException {
+			byte[] encoded = new byte[0];
+			IOException error = null;
+
+			try {
+				if (!failed()) {
+					encoded = compressed ? Compression.gzip(encode()) : encode();
+				}
+			} catch (IOException e) {
+				error = e;
+			} catch (RuntimeException e) {
+				error = new IOException("Unable to encode chunk " + number, e);
+			}
+
+			// a failed chunk still takes its place so the chunks after it are released
+			List<byte[]> placed = new ArrayList<>();
+			long position = place(number, encoded, placed);
+
+			try {
+				for (byte[] bytes : placed) {
+					if (error == null && !failed()) {
+						write(channel, bytes, position);
+						position += bytes.length;
+					}
+				}
+			} catch (IOException e) {
+				error = e;
+			} finally {
+				permits.release(placed.size());
+			}
+
+			if (error != null) {
+				fail(error);
+				throw new UncheckedIOException(error);
+			}
+		}
+
+		/**
+		 * Encodes the entries the way the sequential writer would write them at
+		 * this point of the file.
+		 *
+		 * @return the encoded chunk
+		 * @throws IOException if an IO error occurs
+		 */
+		private byte[] encode() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) CHUNK_BYTES + (1 << 16));
+
+			try (FastJsonWriter writer = new FastJsonWriter(bytes, 1 << 16)) {
+				if (number == 0) {
+					writer.write('{');
+				}
+
+				for (int i = 0; i < entries.size(); i++) {
+					writer.write(number == 0 && i == 0 ? "\n" : ",\n");
+					writer.writeQuote(entries.get(i).getKey(), 1);
+					writer.write(": ");
+					writer.writeNest(entries.get(i).getValue(), 1);
+				}
+			}
+			return bytes.toByteArray();
+		}
+	}
+}
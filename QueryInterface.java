@@ -4,6 +4,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
 
 /**
  * Query interface class to implement in manager and threaded
@@ -29,6 +33,66 @@ public interface QueryInterface {
 		}
 	}
 
+	/**
+	 * query processor to process blocks of query lines, so the queries of each
+	 * block can be searched together
+	 * 
+	 * @param path  the file path
+	 * @param exact the boolean to determine exact or partial search
+	 * @param batch the number of lines in each block
+	 * @throws IOException to throw
+	 */
+	public default void queryProcessor(Path path, boolean exact, int batch) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(path)) {
+			List<String> lines = new ArrayList<>(batch);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+
+				if (lines.size() >= batch) {
+					queryProcessor(lines, exact);
+					lines = new ArrayList<>(batch);
+				}
+			}
+
+			if (!lines.isEmpty()) {
+				queryProcessor(lines, exact);
+			}
+		}
+	}
+
+	/**
+	 * query processor for a block of lines, processing each line on its own
+	 * unless overridden
+	 * 
+	 * @param lines the lines to process
+	 * @param exact the boolean to determine search type
+	 */
+	public default void queryProcessor(List<String> lines, boolean exact) {
+		for (String line : lines) {
+			queryProcessor(line, exact);
+		}
+	}
+
+	/**
+	 * Stems a block of query lines, skipping empty queries and repeats.
+	 * 
+	 * @param lines the lines to stem
+	 * @return the stemmed queries by their joined stems, in the order first found
+	 */
+	public static LinkedHashMap<String, TreeSet<String>> uniqueQueries(List<String> lines) {
+		LinkedHashMap<String, TreeSet<String>> queries = new LinkedHashMap<>();
+
+		for (String line : lines) {
+			TreeSet<String> stemmedLine = WordCleaner.uniqueStems(line);
+
+			if (!stemmedLine.isEmpty()) {
+				queries.putIfAbsent(String.join(" ", stemmedLine), stemmedLine);
+			}
+		}
+		return queries;
+	}
+
 	/**
 	 * abstract method to query processor declaration
 	 * 
@@ -45,4 +109,13 @@ public interface QueryInterface {
 	 */
 	public void resultsJson(Path path) throws IOException;
 
+	/**
+	 * abstract method to output in the given format
+	 * 
+	 * @param path   the path to input
+	 * @param format the output format
+	 * @throws IOException to throw
+	 */
+	public void writeResults(Path path, OutputFormat format) throws IOException;
+
 }
@@ -3,6 +3,8 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -51,6 +53,24 @@ public class QueryManager implements QueryInterface {
 		}
 	}
 
+	@Override
+	/**
+	 * searches the new queries of a block of lines together
+	 * 
+	 * @param lines the lines to process
+	 * @param exact the boolean to determine search type
+	 */
+	public void queryProcessor(List<String> lines, boolean exact) {
+		LinkedHashMap<String, TreeSet<String>> queries = QueryInterface.uniqueQueries(lines);
+		queries.keySet().removeAll(searchResult.keySet());
+
+		var found = this.index.searchBatch(new ArrayList<>(queries.values()), exact);
+		int i = 0;
+		for (String joined : queries.keySet()) {
+			this.searchResult.put(joined, found.get(i++));
+		}
+	}
+
 	@Override
 	/**
 	 * to output to Json format
@@ -59,6 +79,22 @@ public class QueryManager implements QueryInterface {
 	 * @throws IOException to throw
 	 */
 	public void resultsJson(Path path) throws IOException {
-		JsonWriter.writeSearch(searchResult, path);
+		FastJsonWriter.writeSearch(searchResult, path);
+	}
+
+	@Override
+	/**
+	 * to output in the given format
+	 * 
+	 * @param path   the path to input
+	 * @param format the output format
+	 * @throws IOException to throw
+	 */
+	public void writeResults(Path path, OutputFormat format) throws IOException {
+		if (format == OutputFormat.JSON) {
+			resultsJson(path);
+		} else {
+			RecordWriter.writeResults(searchResult, path, format);
+		}
 	}
 }
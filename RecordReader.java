@@ -0,0 +1,558 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.usfca.cs272.RecordWriter.Kind;
+
+/**
+ * Reads back the records written by {@link RecordWriter} one at a time, so a
+ * consumer can process the index, word counts, or search results without
+ * loading the whole file. Call {@link #next()} to move to each record, then use
+ * the getters for that kind of record. Files named {@code .gz} are
+ * decompressed as they are read.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author Jadon Huang
+ */
+public class RecordReader implements Closeable {
+	/** The kind of records read. */
+	private final Kind kind;
+
+	/** Reads the compact JSON lines, or null for binary input. */
+	private final BufferedReader lines;
+
+	/** Reads the binary records, or null for JSON lines. */
+	private final DataInputStream binary;
+
+	/** The word, location, or query of the current record. */
+	private String key;
+
+	/** The positions at each location of the current word. */
+	private Map<String, List<Integer>> locations;
+
+	/** The word count of the current location. */
+	private int count;
+
+	/** The search results of the current query. */
+	private List<Result> results;
+
+	/** Whether the search results of the current query are truncated. */
+	private boolean truncated;
+
+	/**
+	 * Opens a file of records.
+	 *
+	 * @param path   the file path to read
+	 * @param format the format of the file, either NDJSON or BINARY
+	 * @param kind   the kind of records expected
+	 * @throws IOException if unable to open the file, or if a binary file does not
+	 *                     hold records of that kind
+	 */
+	public RecordReader(Path path, OutputFormat format, Kind kind) throws IOException {
+		if (format == OutputFormat.JSON) {
+			throw new IllegalArgumentException("Pretty JSON is not read one record at a time");
+		}
+
+		this.kind = kind;
+
+		if (format == OutputFormat.NDJSON) {
+			this.lines = new BufferedReader(new InputStreamReader(Compression.newInputStream(path), StandardCharsets.UTF_8),
+					1 << 16);
+			this.binary = null;
+		} else {
+			this.lines = null;
+			this.binary = new DataInputStream(new BufferedInputStream(Compression.newInputStream(path), 1 << 16));
+
+			try {
+				if (binary.readInt() != RecordWriter.MAGIC || binary.readUnsignedByte() != RecordWriter.VERSION
+						|| binary.readUnsignedByte() != kind.ordinal()) {
+					throw new IOException("Not a binary " + kind + " file: " + path);
+				}
+			} catch (IOException e) {
+				binary.close();
+				throw e;
+			}
+		}
+
+		this.locations = Collections.emptyMap();
+		this.results = Collections.emptyList();
+	}
+
+	/**
+	 * Moves to the next record.
+	 *
+	 * @return true if there was another record
+	 * @throws IOException if unable to read the file, or if a record is malformed
+	 */
+	public boolean next() throws IOException {
+		return lines != null ? nextLine() : nextBinary();
+	}
+
+	/**
+	 * Returns the word, location, or query of the current record.
+	 *
+	 * @return the key of the record
+	 */
+	public String key() {
+		return key;
+	}
+
+	/**
+	 * Returns the positions of the current word at each location, in the order
+	 * they were written.
+	 *
+	 * @return the positions at each location
+	 */
+	public Map<String, List<Integer>> locations() {
+		return Collections.unmodifiableMap(locations);
+	}
+
+	/**
+	 * Returns the word count of the current location.
+	 *
+	 * @return the word count
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Returns the search results of the current query, in order.
+	 *
+	 * @return the search results
+	 */
+	public List<Result> results() {
+		return Collections.unmodifiableList(results);
+	}
+
+	/**
+	 * Returns whether the search results of the current query are truncated.
+	 *
+	 * @return true if the results are truncated
+	 * @see SearchResults#isTruncated()
+	 */
+	public boolean truncated() {
+		return truncated;
+	}
+
+	/**
+	 * Reads the next JSON line.
+	 *
+	 * @return true if there was another record
+	 * @throws IOException if unable to read the file, or if the line is malformed
+	 */
+	private boolean nextLine() throws IOException {
+		String line;
+		do {
+			line = lines.readLine();
+			if (line == null) {
+				key = null;
+				return false;
+			}
+		} while (line.isBlank());
+
+		Map<?, ?> record;
+		try {
+			record = (Map<?, ?>) new Parser(line).parse();
+		} catch (ClassCastException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException("Malformed record: " + line, e);
+		}
+
+		try {
+			switch (kind) {
+				case INDEX -> {
+					key = (String) record.get("term");
+					locations = new LinkedHashMap<>();
+					for (var location : ((Map<?, ?>) record.get("locations")).entrySet()) {
+						List<Integer> positions = new ArrayList<>();
+						for (Object position : (List<?>) location.getValue()) {
+							positions.add(((Number) position).intValue());
+						}
+						locations.put((String) location.getKey(), positions);
+					}
+				}
+				case COUNTS -> {
+					key = (String) record.get("location");
+					count = ((Number) record.get("count")).intValue();
+				}
+				case RESULTS -> {
+					key = (String) record.get("query");
+					results = new ArrayList<>();
+					for (Object item : (List<?>) record.get("results")) {
+						Map<?, ?> result = (Map<?, ?>) item;
+						results.add(new Result((String) result.get("where"), ((Number) result.get("count")).intValue(),
+								((Number) result.get("score")).doubleValue()));
+					}
+					truncated = Boolean.TRUE.equals(record.get("truncated"));
+				}
+			}
+		} catch (ClassCastException | NullPointerException e) {
+			throw new IOException("Malformed " + kind + " record: " + line, e);
+		}
+
+		if (key == null) {
+			throw new IOException("Malformed " + kind + " record: " + line);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the next binary record.
+	 *
+	 * @return true if there was another record
+	 * @throws IOException if unable to read the file, or if the record is cut off
+	 */
+	private boolean nextBinary() throws IOException {
+		int first = binary.read();
+		if (first < 0) {
+			key = null;
+			return false;
+		}
+
+		key = readText(readVarint(first));
+
+		switch (kind) {
+			case INDEX -> {
+				int size = readVarint(binary.readUnsignedByte());
+				locations = new LinkedHashMap<>();
+
+				for (int i = 0; i < size; i++) {
+					String location = readText(readVarint(binary.readUnsignedByte()));
+					int positions = readVarint(binary.readUnsignedByte());
+					List<Integer> list = new ArrayList<>(positions);
+
+					int previous = 0;
+					for (int j = 0; j < positions; j++) {
+						int zigzag = readVarint(binary.readUnsignedByte());
+						previous += zigzag >>> 1 ^ -(zigzag & 1);
+						list.add(previous);
+					}
+					locations.put(location, list);
+				}
+			}
+			case COUNTS -> count = readVarint(binary.readUnsignedByte());
+			case RESULTS -> {
+				int size = readVarint(binary.readUnsignedByte());
+				results = new ArrayList<>(size);
+
+				for (int i = 0; i < size; i++) {
+					String where = readText(readVarint(binary.readUnsignedByte()));
+					int matches = readVarint(binary.readUnsignedByte());
+					results.add(new Result(where, matches, binary.readDouble()));
+				}
+				truncated = binary.readUnsignedByte() != 0;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the rest of an unsigned variable-length integer.
+	 *
+	 * @param first the first byte, already read
+	 * @return the value
+	 * @throws IOException if the file ends first or the value is too long
+	 */
+	private int readVarint(int first) throws IOException {
+		int value = first & 0x7F;
+		int current = first;
+
+		for (int shift = 7; (current & 0x80) != 0; shift += 7) {
+			if (shift > 28) {
+				throw new IOException("Malformed variable-length integer");
+			}
+			current = binary.readUnsignedByte();
+			value |= (current & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	/**
+	 * Reads text of the given length in UTF-8 bytes.
+	 *
+	 * @param length the number of bytes
+	 * @return the text
+	 * @throws IOException if the file ends first
+	 */
+	private String readText(int length) throws IOException {
+		if (length < 0) {
+			throw new EOFException("Negative text length");
+		}
+		byte[] bytes = new byte[length];
+		binary.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (lines != null) {
+			lines.close();
+		} else {
+			binary.close();
+		}
+	}
+
+	/**
+	 * A single search result read back from file.
+	 */
+	public static class Result {
+		/** The location of the result. */
+		private final String where;
+
+		/** The number of matches at the location. */
+		private final int count;
+
+		/** The score of the location. */
+		private final double score;
+
+		/**
+		 * Creates a result.
+		 *
+		 * @param where the location
+		 * @param count the number of matches
+		 * @param score the score
+		 */
+		public Result(String where, int count, double score) {
+			this.where = where;
+			this.count = count;
+			this.score = score;
+		}
+
+		/**
+		 * Returns the location of the result.
+		 *
+		 * @return the location
+		 */
+		public String getWhere() {
+			return where;
+		}
+
+		/**
+		 * Returns the number of matches at the location.
+		 *
+		 * @return the number of matches
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the score of the location.
+		 *
+		 * @return the score
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return where + " " + count + " " + score;
+		}
+	}
+
+	/**
+	 * Parses a single compact JSON value. Objects become maps in the order of
+	 * their keys, arrays become lists, and numbers become longs or doubles.
+	 */
+	private static class Parser {
+		/** The text being parsed. */
+		private final String text;
+
+		/** The index of the next character. */
+		private int index;
+
+		/**
+		 * Creates a parser for the text.
+		 *
+		 * @param text the text to parse
+		 */
+		private Parser(String text) {
+			this.text = text;
+			this.index = 0;
+		}
+
+		/**
+		 * Parses the whole text as one value.
+		 *
+		 * @return the value
+		 */
+		private Object parse() {
+			Object value = value();
+			skipSpace();
+			if (index != text.length()) {
+				throw new IllegalArgumentException("Unexpected text after value at " + index);
+			}
+			return value;
+		}
+
+		/**
+		 * Parses the next value.
+		 *
+		 * @return the value
+		 */
+		private Object value() {
+			skipSpace();
+			char c = text.charAt(index);
+
+			switch (c) {
+				case '{':
+					return object();
+				case '[':
+					return array();
+				case '"':
+					return string();
+				case 't':
+					return literal("true", Boolean.TRUE);
+				case 'f':
+					return literal("false", Boolean.FALSE);
+				case 'n':
+					return literal("null", null);
+				default:
+					return number();
+			}
+		}
+
+		/**
+		 * Parses an object.
+		 *
+		 * @return the keys and values in order
+		 */
+		private Map<String, Object> object() {
+			Map<String, Object> object = new LinkedHashMap<>();
+			index++;
+			skipSpace();
+
+			if (text.charAt(index) == '}') {
+				index++;
+				return object;
+			}
+
+			while (true) {
+				skipSpace();
+				String name = string();
+				skipSpace();
+				expect(':');
+				object.put(name, value());
+				skipSpace();
+
+				if (text.charAt(index) == '}') {
+					index++;
+					return object;
+				}
+				expect(',');
+			}
+		}
+
+		/**
+		 * Parses an array.
+		 *
+		 * @return the values in order
+		 */
+		private List<Object> array() {
+			List<Object> array = new ArrayList<>();
+			index++;
+			skipSpace();
+
+			if (text.charAt(index) == ']') {
+				index++;
+				return array;
+			}
+
+			while (true) {
+				array.add(value());
+				skipSpace();
+
+				if (text.charAt(index) == ']') {
+					index++;
+					return array;
+				}
+				expect(',');
+			}
+		}
+
+		/**
+		 * Parses a string, replacing escapes.
+		 *
+		 * @return the string
+		 */
+		private String string() {
+			expect('"');
+			int end = JsonText.closingQuote(text, index);
+			String string = JsonText.unescape(text, index, end);
+			index = end + 1;
+			return string;
+		}
+
+		/**
+		 * Parses a number.
+		 *
+		 * @return a long for whole numbers, otherwise a double
+		 */
+		private Number number() {
+			int start = index;
+			boolean decimal = false;
+
+			while (index < text.length() && "+-0123456789.eE".indexOf(text.charAt(index)) >= 0) {
+				char c = text.charAt(index++);
+				decimal |= c == '.' || c == 'e' || c == 'E';
+			}
+
+			String number = text.substring(start, index);
+			if (number.isEmpty()) {
+				throw new IllegalArgumentException("Unexpected character at " + start);
+			}
+			return decimal ? Double.parseDouble(number) : Long.parseLong(number);
+		}
+
+		/**
+		 * Parses a literal word.
+		 *
+		 * @param word  the expected word
+		 * @param value the value of the word
+		 * @return the value
+		 */
+		private Object literal(String word, Object value) {
+			if (!text.startsWith(word, index)) {
+				throw new IllegalArgumentException("Unexpected character at " + index);
+			}
+			index += word.length();
+			return value;
+		}
+
+		/**
+		 * Skips the expected character.
+		 *
+		 * @param expected the expected character
+		 */
+		private void expect(char expected) {
+			if (text.charAt(index) != expected) {
+				throw new IllegalArgumentException("Expected " + expected + " at " + index);
+			}
+			index++;
+		}
+
+		/**
+		 * Skips any whitespace.
+		 */
+		private void skipSpace() {
+			while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+				index++;
+			}
+		}
+	}
+}
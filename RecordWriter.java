@@ -0,0 +1,330 @@
+package edu.usfca.cs272;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import edu.usfca.cs272.InvertedIndex.QuerySearchResults;
+
+/**
+ * Writes the index, word counts, or search results one record at a time in one
+ * of the compact formats, so the output can be read back a record at a time
+ * with {@link RecordReader}.
+ *
+ * <p>
+ * In {@link OutputFormat#NDJSON} every record is a JSON object on its own line:
+ * {@code {"term":"apple","locations":{"a.txt":[1,5]}}},
+ * {@code {"location":"a.txt","count":12}}, or
+ * {@code {"query":"appl","results":[{"count":1,"score":0.50000000,"where":"a.txt"}]}}.
+ * Search results cut short by the expansion limit or the search timeout also
+ * have {@code "truncated":true}.
+ *
+ * <p>
+ * In {@link OutputFormat#BINARY} the file starts with {@link #MAGIC}, a
+ * version byte, and the kind of record. Each record follows with counts as
+ * unsigned variable-length integers, text as a length followed by UTF-8 bytes,
+ * positions as the difference from the previous position, and scores as 8 byte
+ * doubles, and each query ends with a byte that is 1 if its results are
+ * truncated. The file ends after the last record.
+ *
+ * <p>
+ * Either format is gzip compressed when the file name ends in {@code .gz}.
+ *
+ * Warning: This class is not thread-safe.
+ *
+ * @author Jadon Huang
+ */
+public class RecordWriter implements Closeable {
+	/** The first four bytes of a binary file. */
+	public static final int MAGIC = 0x53524543;
+
+	/** The version of the binary layout. */
+	public static final int VERSION = 1;
+
+	/**
+	 * The kinds of records a file can hold.
+	 */
+	public enum Kind {
+		/** A word and its positions at each location. */
+		INDEX,
+
+		/** A location and its word count. */
+		COUNTS,
+
+		/** A query and its search results. */
+		RESULTS
+	}
+
+	/** The kind of records written. */
+	private final Kind kind;
+
+	/** Writes the compact JSON lines, or null for binary output. */
+	private final FastJsonWriter json;
+
+	/** Writes the binary records, or null for JSON lines. */
+	private final DataOutputStream binary;
+
+	/**
+	 * Creates a writer that replaces the file at the given path.
+	 *
+	 * @param path   the file path to use
+	 * @param format the format to write, either NDJSON or BINARY
+	 * @param kind   the kind of records to write
+	 * @throws IOException if unable to open the file
+	 */
+	public RecordWriter(Path path, OutputFormat format, Kind kind) throws IOException {
+		if (format == OutputFormat.JSON) {
+			throw new IllegalArgumentException("Pretty JSON is written by FastJsonWriter");
+		}
+
+		this.kind = kind;
+
+		if (format == OutputFormat.NDJSON) {
+			this.json = new FastJsonWriter(path);
+			this.binary = null;
+		} else {
+			this.json = null;
+			this.binary = new DataOutputStream(Compression.newOutputStream(path));
+			binary.writeInt(MAGIC);
+			binary.writeByte(VERSION);
+			binary.writeByte(kind.ordinal());
+		}
+	}
+
+	/**
+	 * Writes every word of the index to file.
+	 *
+	 * @param elements the words and their positions at each location
+	 * @param path     the file path to use
+	 * @param format   the format to write, either NDJSON or BINARY
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeIndex(Map<String, ? extends Map<String, ? extends Collection<? extends Number>>> elements,
+			Path path, OutputFormat format) throws IOException {
+		try (RecordWriter writer = new RecordWriter(path, format, Kind.INDEX)) {
+			for (var entry : elements.entrySet()) {
+				writer.writeTerm(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Writes the word count of every location to file.
+	 *
+	 * @param elements the word count of each location
+	 * @param path     the file path to use
+	 * @param format   the format to write, either NDJSON or BINARY
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeCounts(Map<String, ? extends Number> elements, Path path, OutputFormat format)
+			throws IOException {
+		try (RecordWriter writer = new RecordWriter(path, format, Kind.COUNTS)) {
+			for (var entry : elements.entrySet()) {
+				writer.writeCount(entry.getKey(), entry.getValue().intValue());
+			}
+		}
+	}
+
+	/**
+	 * Writes the results of every query to file.
+	 *
+	 * @param resultStore the search results by query
+	 * @param path        the file path to use
+	 * @param format      the format to write, either NDJSON or BINARY
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void writeResults(Map<String, ? extends List<QuerySearchResults>> resultStore, Path path,
+			OutputFormat format) throws IOException {
+		try (RecordWriter writer = new RecordWriter(path, format, Kind.RESULTS)) {
+			for (var entry : resultStore.entrySet()) {
+				writer.writeQuery(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Writes a word and its positions at each location.
+	 *
+	 * @param term      the word
+	 * @param locations the positions of the word at each location
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeTerm(String term, Map<String, ? extends Collection<? extends Number>> locations)
+			throws IOException {
+		check(Kind.INDEX);
+
+		if (json != null) {
+			json.write("{\"term\":");
+			json.writeEscaped(term);
+			json.write(",\"locations\":{");
+			boolean first = true;
+
+			for (var location : locations.entrySet()) {
+				if (!first) {
+					json.write(',');
+				}
+				json.writeEscaped(location.getKey());
+				json.write(":[");
+
+				boolean firstPosition = true;
+				for (Number position : location.getValue()) {
+					if (!firstPosition) {
+						json.write(',');
+					}
+					json.writeInt(position.intValue());
+					firstPosition = false;
+				}
+
+				json.write(']');
+				first = false;
+			}
+
+			json.write("}}\n");
+		} else {
+			writeText(term);
+			writeVarint(locations.size());
+
+			for (var location : locations.entrySet()) {
+				writeText(location.getKey());
+				writeVarint(location.getValue().size());
+
+				int previous = 0;
+				for (Number position : location.getValue()) {
+					int value = position.intValue();
+					int delta = value - previous;
+					writeVarint(delta << 1 ^ delta >> 31);
+					previous = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a location and its word count.
+	 *
+	 * @param location the location
+	 * @param count    the word count
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeCount(String location, int count) throws IOException {
+		check(Kind.COUNTS);
+
+		if (json != null) {
+			json.write("{\"location\":");
+			json.writeEscaped(location);
+			json.write(",\"count\":");
+			json.writeInt(count);
+			json.write("}\n");
+		} else {
+			writeText(location);
+			writeVarint(count);
+		}
+	}
+
+	/**
+	 * Writes a query and its search results.
+	 *
+	 * @param query   the query
+	 * @param results the search results in order
+	 * @throws IOException if an IO error occurs
+	 */
+	public void writeQuery(String query, List<QuerySearchResults> results) throws IOException {
+		check(Kind.RESULTS);
+
+		if (json != null) {
+			json.write("{\"query\":");
+			json.writeEscaped(query);
+			json.write(",\"results\":[");
+
+			for (int i = 0; i < results.size(); i++) {
+				QuerySearchResults result = results.get(i);
+				json.write(i == 0 ? "{\"count\":" : ",{\"count\":");
+				json.writeInt(result.wordGet());
+				json.write(",\"score\":");
+				json.writeScore(result.freqGet());
+				json.write(",\"where\":");
+				json.writeEscaped(result.fileGet());
+				json.write('}');
+			}
+
+			json.write(']');
+			if (isTruncated(results)) {
+				json.write(",\"truncated\":true");
+			}
+			json.write("}\n");
+		} else {
+			writeText(query);
+			writeVarint(results.size());
+
+			for (QuerySearchResults result : results) {
+				writeText(result.fileGet());
+				writeVarint(result.wordGet());
+				binary.writeDouble(result.freqGet());
+			}
+			binary.writeByte(isTruncated(results) ? 1 : 0);
+		}
+	}
+
+	/**
+	 * Returns whether the search results left out some matching words.
+	 *
+	 * @param results the search results
+	 * @return true if the results are truncated
+	 * @see SearchResults#isTruncated()
+	 */
+	private static boolean isTruncated(List<QuerySearchResults> results) {
+		return results instanceof SearchResults found && found.isTruncated();
+	}
+
+	/**
+	 * Makes sure records of a single kind go in each file.
+	 *
+	 * @param expected the kind of record being written
+	 */
+	private void check(Kind expected) {
+		if (kind != expected) {
+			throw new IllegalStateException("Cannot write " + expected + " records to a " + kind + " file");
+		}
+	}
+
+	/**
+	 * Writes text as its length followed by its UTF-8 bytes.
+	 *
+	 * @param text the text to write
+	 * @throws IOException if an IO error occurs
+	 */
+	private void writeText(String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		writeVarint(bytes.length);
+		binary.write(bytes);
+	}
+
+	/**
+	 * Writes an unsigned variable-length integer, seven bits per byte with the
+	 * high bit set on every byte but the last.
+	 *
+	 * @param value the value to write, treated as unsigned
+	 * @throws IOException if an IO error occurs
+	 */
+	private void writeVarint(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			binary.writeByte(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		binary.writeByte(value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (json != null) {
+			json.close();
+		} else {
+			binary.close();
+		}
+	}
+}
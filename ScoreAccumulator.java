@@ -0,0 +1,171 @@
+package edu.usfca.cs272;
+
+import java.util.Arrays;
+
+/**
+ * Adds up the number of matches at each document of a search using arrays
+ * indexed by dense document id. Only the documents touched by the search are
+ * remembered, in the order they were first touched, so clearing costs nothing
+ * for untouched documents and the arrays are reused from search to search.
+ *
+ * Warning: This class is not thread-safe. Use {@link #local(int)} to get the
+ * accumulator belonging to the current thread.
+ *
+ * @author Jadon Huang
+ */
+public class ScoreAccumulator {
+	/** One accumulator per thread, reused by every search on that thread. */
+	private static final ThreadLocal<ScoreAccumulator> local = ThreadLocal.withInitial(ScoreAccumulator::new);
+
+	/** The number of matches at each document, zero if untouched. */
+	private int[] counts;
+
+	/** The touched documents, in the order they were first touched. */
+	private int[] touched;
+
+	/** The number of touched documents. */
+	private int size;
+
+	/**
+	 * Creates an empty accumulator.
+	 */
+	public ScoreAccumulator() {
+		this.counts = new int[16];
+		this.touched = new int[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the empty accumulator of the current thread, able to hold the given
+	 * number of documents.
+	 *
+	 * @param documents the number of documents in the index
+	 * @return the thread local accumulator
+	 */
+	public static ScoreAccumulator local(int documents) {
+		ScoreAccumulator accumulator = local.get();
+		accumulator.clear();
+		accumulator.ensureCapacity(documents);
+		return accumulator;
+	}
+
+	/**
+	 * Makes room for the given number of documents.
+	 *
+	 * @param documents the number of documents in the index
+	 */
+	public void ensureCapacity(int documents) {
+		if (documents > counts.length) {
+			int capacity = Math.max(documents, counts.length * 2);
+			counts = Arrays.copyOf(counts, capacity);
+			touched = Arrays.copyOf(touched, capacity);
+		}
+	}
+
+	/**
+	 * Adds matches to a document.
+	 *
+	 * @param document the document id
+	 * @param matches  the number of matches to add, greater than zero
+	 */
+	public void add(int document, int matches) {
+		if (counts[document] == 0) {
+			touched[size++] = document;
+		}
+		counts[document] += matches;
+	}
+
+	/**
+	 * Adds the matches of a partial result, in its order.
+	 *
+	 * @param partial the partial result to add
+	 */
+	public void addAll(Partial partial) {
+		for (int i = 0; i < partial.documents.length; i++) {
+			add(partial.documents[i], partial.counts[i]);
+		}
+	}
+
+	/**
+	 * Returns the number of touched documents.
+	 *
+	 * @return the number of documents with at least one match
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a touched document.
+	 *
+	 * @param i the order the document was first touched in
+	 * @return the document id
+	 */
+	public int document(int i) {
+		return touched[i];
+	}
+
+	/**
+	 * Returns the number of matches at a document.
+	 *
+	 * @param document the document id
+	 * @return the number of matches
+	 */
+	public int count(int document) {
+		return counts[document];
+	}
+
+	/**
+	 * Copies the touched documents and their matches out and clears the
+	 * accumulator.
+	 *
+	 * @return the partial result
+	 */
+	public Partial drain() {
+		Partial partial = new Partial(Arrays.copyOf(touched, size), new int[size]);
+
+		for (int i = 0; i < size; i++) {
+			partial.counts[i] = counts[touched[i]];
+		}
+		clear();
+		return partial;
+	}
+
+	/**
+	 * Resets every touched document.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			counts[touched[i]] = 0;
+		}
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + size + " touched of " + counts.length + "]";
+	}
+
+	/**
+	 * Matches added up by part of a search, used to combine work done on
+	 * several threads.
+	 */
+	public static class Partial {
+		/** The documents, in the order they were first touched. */
+		private final int[] documents;
+
+		/** The number of matches at each document. */
+		private final int[] counts;
+
+		/**
+		 * Creates a partial result.
+		 *
+		 * @param documents the documents in order
+		 * @param counts    the number of matches at each document
+		 */
+		private Partial(int[] documents, int[] counts) {
+			this.documents = documents;
+			this.counts = counts;
+		}
+	}
+}
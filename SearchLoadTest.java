@@ -0,0 +1,216 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load-test client for {@link SearchServer}. Several client threads send the
+ * lines of a query file to the server round-robin until the requested number
+ * of searches is done, then the throughput and latency percentiles are
+ * printed.
+ *
+ * Usage: {@code -port 8080 -query queries.txt [-threads 4] [-requests 1000]
+ * [-exact] [-warmup 100]}
+ *
+ * @author Jadon Huang
+ */
+public class SearchLoadTest {
+	/** The server port to test. */
+	private final int port;
+
+	/** The queries to send. */
+	private final List<String> queries;
+
+	/** Whether to ask for exact searches. */
+	private final boolean exact;
+
+	/** Shared HTTP client. */
+	private final HttpClient client;
+
+	/**
+	 * Creates a load test against the local server.
+	 *
+	 * @param port    the server port
+	 * @param queries the queries to send
+	 * @param exact   whether to ask for exact searches
+	 */
+	public SearchLoadTest(int port, List<String> queries, boolean exact) {
+		this.port = port;
+		this.queries = queries;
+		this.exact = exact;
+		this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+	}
+
+	/**
+	 * Sends the given number of searches from several threads and collects the
+	 * latency of each.
+	 *
+	 * @param threads  the number of client threads
+	 * @param requests the number of searches to send
+	 * @return the latency of each search in nanoseconds, and the total time
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public Report run(int threads, int requests) throws InterruptedException {
+		long[] latencies = new long[requests];
+		AtomicInteger next = new AtomicInteger(0);
+		LongAdder failures = new LongAdder();
+		Thread[] clients = new Thread[threads];
+
+		long start = System.nanoTime();
+
+		for (int i = 0; i < threads; i++) {
+			clients[i] = new Thread(() -> {
+				int request;
+				while ((request = next.getAndIncrement()) < requests) {
+					long sent = System.nanoTime();
+
+					try {
+						if (send(queries.get(request % queries.size())) != 200) {
+							failures.increment();
+						}
+					} catch (IOException e) {
+						failures.increment();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+
+					latencies[request] = System.nanoTime() - sent;
+				}
+			});
+			clients[i].start();
+		}
+
+		for (Thread thread : clients) {
+			thread.join();
+		}
+
+		return new Report(latencies, System.nanoTime() - start, failures.sum());
+	}
+
+	/**
+	 * Sends a single search and reads the whole response.
+	 *
+	 * @param query the query line
+	 * @return the response status code
+	 * @throws IOException          if the request fails
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public int send(String query) throws IOException, InterruptedException {
+		URI uri = URI.create("http://127.0.0.1:" + port + SearchServer.CONTEXT + "?q="
+				+ URLEncoder.encode(query, StandardCharsets.UTF_8) + "&exact=" + exact);
+		HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+		return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+	}
+
+	/**
+	 * Throughput and latency of a load test run.
+	 */
+	public static class Report {
+		/** Sorted latency of each search in nanoseconds. */
+		private final long[] latencies;
+
+		/** Total time of the run in nanoseconds. */
+		private final long elapsed;
+
+		/** Number of failed searches. */
+		private final long failures;
+
+		/**
+		 * Creates a report.
+		 *
+		 * @param latencies the latency of each search in nanoseconds
+		 * @param elapsed   the total time of the run in nanoseconds
+		 * @param failures  the number of failed searches
+		 */
+		public Report(long[] latencies, long elapsed, long failures) {
+			this.latencies = latencies.clone();
+			this.elapsed = elapsed;
+			this.failures = failures;
+			Arrays.sort(this.latencies);
+		}
+
+		/**
+		 * Returns the searches completed per second.
+		 *
+		 * @return the throughput
+		 */
+		public double qps() {
+			return elapsed == 0 ? 0 : latencies.length / (elapsed / 1e9);
+		}
+
+		/**
+		 * Returns a latency percentile using the nearest rank.
+		 *
+		 * @param percent the percentile between 0 and 100
+		 * @return the latency in milliseconds
+		 */
+		public double percentile(double percent) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(percent / 100 * latencies.length);
+			return latencies[Math.max(0, Math.min(latencies.length - 1, rank - 1))] / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d searches in %.2f s, %d failed: %.1f QPS, p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+					latencies.length, elapsed / 1e9, failures, qps(), percentile(50), percentile(90), percentile(99),
+					percentile(100));
+		}
+	}
+
+	/**
+	 * Runs a load test against a server started with {@code -serve}.
+	 *
+	 * @param args flag/value pairs used to start the test
+	 * @throws IOException          if unable to read the query file
+	 * @throws InterruptedException if interrupted while testing
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		ArgumentParser argParse = new ArgumentParser(args);
+		Path queryPath = argParse.getPath("-query");
+
+		if (!argParse.hasFlag("-port") || queryPath == null) {
+			System.out.println("Usage: -port PORT -query FILE [-threads N] [-requests N] [-exact] [-warmup N]");
+			return;
+		}
+
+		List<String> queries = new ArrayList<>();
+		for (String line : Files.readAllLines(queryPath, StandardCharsets.UTF_8)) {
+			if (!line.isBlank()) {
+				queries.add(line);
+			}
+		}
+
+		if (queries.isEmpty()) {
+			System.out.println("No queries in " + queryPath);
+			return;
+		}
+
+		SearchLoadTest test = new SearchLoadTest(argParse.getInteger("-port", 8080), queries,
+				argParse.hasFlag("-exact"));
+		int threads = Math.max(1, argParse.getInteger("-threads", 4));
+		int warmup = Math.max(0, argParse.getInteger("-warmup", 0));
+
+		if (warmup > 0) {
+			test.run(threads, warmup);
+		}
+
+		System.out.println(test.run(threads, Math.max(1, argParse.getInteger("-requests", 1000))));
+	}
+}
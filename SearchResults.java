@@ -0,0 +1,56 @@
+package edu.usfca.cs272;
+
+import java.util.ArrayList;
+
+/**
+ * The sorted results of a single search, along with whether any query word
+ * was expanded to fewer words than it matches or the search ran out of time.
+ * The flag is written with the results by {@link RecordWriter}, while the
+ * pretty JSON results keep their fixed layout.
+ *
+ * @author Jadon Huang
+ */
+public class SearchResults extends ArrayList<InvertedIndex.QuerySearchResults> {
+	/** Serial version id. */
+	private static final long serialVersionUID = 1L;
+
+	/** Whether the search left out some matching words. */
+	private boolean truncated;
+
+	/**
+	 * Creates empty search results.
+	 *
+	 * @param capacity the expected number of results
+	 */
+	public SearchResults(int capacity) {
+		super(capacity);
+		this.truncated = false;
+	}
+
+	/**
+	 * Returns whether the search left out some matching words because a prefix
+	 * matched more words than the expansion limit, or because the search ran out
+	 * of time.
+	 *
+	 * @return true if the results are truncated
+	 * @see InvertedIndex#setExpansionLimit(int)
+	 * @see InvertedIndex#setSearchTimeout(long)
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Sets whether the search left out some matching words.
+	 *
+	 * @param truncated true if the results are truncated
+	 */
+	public void setTruncated(boolean truncated) {
+		this.truncated = truncated;
+	}
+
+	@Override
+	public String toString() {
+		return (truncated ? "truncated " : "") + super.toString();
+	}
+}
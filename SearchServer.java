@@ -0,0 +1,244 @@
+package edu.usfca.cs272;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Answers search queries over HTTP while keeping the index in memory. The
+ * server only listens on the loopback address. A request such as
+ * {@code GET /search?q=some+words&exact=true} gets the results of that single
+ * query in the same JSON format as the {@code -results} file. An optional
+ * {@code timeout} parameter gives the search a time budget in milliseconds,
+ * capped at the search timeout of the index. When a search left out matching
+ * words or ran out of time, the response has the header
+ * {@code X-Truncated: true}.
+ *
+ * @author Jadon Huang
+ */
+public class SearchServer {
+	/** The path searches are answered on. */
+	public static final String CONTEXT = "/search";
+
+	/** Header set on responses with truncated results. */
+	public static final String TRUNCATED = "X-Truncated";
+
+	/** The index to search. */
+	private final InvertedIndex index;
+
+	/** The underlying HTTP server. */
+	private final HttpServer server;
+
+	/** Released once the server is stopped. */
+	private final CountDownLatch stopped;
+
+	/** Number of searches answered. */
+	private final LongAdder searches;
+
+	/**
+	 * Creates a server for the index on the loopback address. The server does not
+	 * accept requests until started.
+	 *
+	 * @param index    the index to search
+	 * @param port     the port to listen on, or 0 for any free port
+	 * @param executor runs the request handlers, or null to handle requests on the
+	 *                 dispatching thread
+	 * @throws IOException if unable to bind to the port
+	 */
+	public SearchServer(InvertedIndex index, int port, Executor executor) throws IOException {
+		this.index = index;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.stopped = new CountDownLatch(1);
+		this.searches = new LongAdder();
+
+		server.createContext(CONTEXT, this::handle);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops the server, waiting up to the given delay for open requests.
+	 *
+	 * @param delay the most seconds to wait for open requests
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		stopped.countDown();
+	}
+
+	/**
+	 * Waits until the server is stopped.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
+		stopped.await();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 *
+	 * @return the port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Returns the number of searches answered.
+	 *
+	 * @return the number of searches
+	 */
+	public long searches() {
+		return searches.sum();
+	}
+
+	/**
+	 * Answers a single request.
+	 *
+	 * @param exchange the request and response
+	 * @throws IOException if unable to send the response
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			respond(exchange);
+		} catch (RuntimeException e) {
+			// keeps the handler thread alive; the client sees the connection close
+			System.out.println("Unable to answer search: " + e);
+		}
+	}
+
+	/**
+	 * Parses the request, runs the search, and sends the results.
+	 *
+	 * @param exchange the request and response
+	 * @throws IOException if unable to send the response
+	 */
+	private void respond(HttpExchange exchange) throws IOException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			send(exchange, 405, "Only GET is supported.\n", "text/plain");
+			return;
+		}
+
+		Map<String, String> parameters;
+		try {
+			parameters = parse(exchange.getRequestURI().getRawQuery());
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, "Malformed query string.\n", "text/plain");
+			return;
+		}
+
+		String line = parameters.get("q");
+
+		if (line == null) {
+			send(exchange, 400, "Missing query parameter q.\n", "text/plain");
+			return;
+		}
+
+		boolean exact = Boolean.parseBoolean(parameters.get("exact")) || "1".equals(parameters.get("exact"));
+		Deadline deadline = null;
+
+		if (parameters.containsKey("timeout")) {
+			try {
+				long requested = Long.parseLong(parameters.get("timeout"));
+				long configured = index.getSearchTimeout();
+
+				// a request may shorten the configured budget, but never lift it
+				if (configured > 0 && (requested <= 0 || requested > configured)) {
+					requested = configured;
+				}
+				deadline = Deadline.after(requested);
+			} catch (NumberFormatException e) {
+				send(exchange, 400, "Invalid timeout parameter.\n", "text/plain");
+				return;
+			}
+		}
+
+		TreeMap<String, ArrayList<InvertedIndex.QuerySearchResults>> results = new TreeMap<>();
+		TreeSet<String> stems = WordCleaner.uniqueStems(line);
+
+		if (!stems.isEmpty()) {
+			ArrayList<InvertedIndex.QuerySearchResults> found = deadline == null ? index.search(stems, exact)
+					: index.search(stems, exact, deadline);
+			results.put(String.join(" ", stems), found);
+
+			if (found instanceof SearchResults && ((SearchResults) found).isTruncated()) {
+				exchange.getResponseHeaders().set(TRUNCATED, "true");
+			}
+		}
+
+		StringWriter writer = new StringWriter();
+		JsonWriter.writeSearch(results, writer, 0);
+		searches.increment();
+		send(exchange, 200, writer.toString(), "application/json");
+	}
+
+	/**
+	 * Sends a complete response.
+	 *
+	 * @param exchange the request and response
+	 * @param status   the status code
+	 * @param body     the response body
+	 * @param type     the content type of the body
+	 * @throws IOException if unable to send the response
+	 */
+	private static void send(HttpExchange exchange, int status, String body, String type) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Parses a URL query string. Later values replace earlier ones.
+	 *
+	 * @param query the raw query string, or null
+	 * @return the decoded parameters
+	 * @throws IllegalArgumentException if a name or value has a malformed escape
+	 */
+	public static Map<String, String> parse(String query) {
+		Map<String, String> parameters = new HashMap<>();
+
+		if (query != null && !query.isEmpty()) {
+			for (String pair : query.split("&")) {
+				int equals = pair.indexOf('=');
+				String name = equals < 0 ? pair : pair.substring(0, equals);
+				String value = equals < 0 ? "" : pair.substring(equals + 1);
+				parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+						URLDecoder.decode(value, StandardCharsets.UTF_8));
+			}
+		}
+		return parameters;
+	}
+
+	@Override
+	public String toString() {
+		return "[http://" + server.getAddress().getHostString() + ":" + getPort() + CONTEXT + ", " + searches()
+				+ " searches]";
+	}
+}
@@ -0,0 +1,979 @@
+package edu.usfca.cs272;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Thread-safe inverted index that keeps its postings under a memory budget.
+ * Postings are added in memory until their estimated size reaches the budget,
+ * and are then written to disk as a run sorted by word and location. Once
+ * indexing is done the runs are merged into a single sorted file with a
+ * streaming k-way merge, and only a dictionary from each word to its postings
+ * in that file stays in memory. The word count of each location always stays
+ * in memory.
+ *
+ * Until the first run is written this behaves like a
+ * {@link ThreadedInvertedIndex}. After the merge, the output, searches, and
+ * getters read the merged file and give the same results as an index held
+ * entirely in memory, except {@link #getWordMap()}, which has no map to
+ * return.
+ *
+ * A run is a word count followed by one record per word: the word, the number
+ * of locations, and for each location the location, the number of positions,
+ * and the positions in increasing order. Text is stored as a length followed by
+ * UTF-8 bytes.
+ *
+ * @author Jadon Huang
+ */
+public class SpillingIndex extends ThreadedInvertedIndex {
+	/** Estimated heap bytes used by each stored position. */
+	public static final int POSITION_BYTES = 56;
+
+	/** Estimated heap bytes used by each word and location pair. */
+	public static final int POSTING_BYTES = 160;
+
+	/** Size of the buffers used to read and write runs. */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** Orders words the same way the in-memory index does. */
+	private static final Comparator<String> WORDS = String.CASE_INSENSITIVE_ORDER;
+
+	/** Estimated heap bytes of postings held before writing a run. */
+	private final long budget;
+
+	/** Estimated heap bytes of the postings currently in memory. */
+	private long estimate;
+
+	/** Where the directory holding the runs is created, or null for the default. */
+	private final Path parent;
+
+	/** Directory holding the runs, created when the first run is written. */
+	private Path directory;
+
+	/** The runs written so far, in order. */
+	private final List<Path> runs;
+
+	/** The merged file of every run, or null if not merged yet. */
+	private Path merged;
+
+	/** Where each word is stored in the merged file. */
+	private TreeMap<String, Entry> dictionary;
+
+	/** Channel used to read postings out of the merged file. */
+	private FileChannel channel;
+
+	/**
+	 * Creates an empty index that writes runs once its postings reach the budget.
+	 *
+	 * @param budget the estimated heap bytes of postings to hold in memory
+	 */
+	public SpillingIndex(long budget) {
+		this(budget, null);
+	}
+
+	/**
+	 * Creates an empty index that writes runs once its postings reach the budget,
+	 * keeping the runs in a new directory inside the given one.
+	 *
+	 * @param budget the estimated heap bytes of postings to hold in memory
+	 * @param parent where to create the directory of runs, or null for the
+	 *               default temporary directory
+	 */
+	public SpillingIndex(long budget, Path parent) {
+		super();
+		this.budget = Math.max(1, budget);
+		this.estimate = 0;
+		this.parent = parent;
+		this.directory = null;
+		this.runs = new ArrayList<>();
+		this.merged = null;
+		this.dictionary = null;
+		this.channel = null;
+	}
+
+	@Override
+	public void add(String word, String location, Integer count) {
+		synchronized (runs) {
+			checkOpen();
+			super.add(word, location, count);
+			grow(POSITION_BYTES + POSTING_BYTES / 4);
+		}
+	}
+
+	@Override
+	public void addAll(InvertedIndex other) {
+		Map<String, Map<String, Collection<Integer>>> byLocation = new HashMap<>();
+
+		for (var word : other.getWordMap().entrySet()) {
+			for (var location : word.getValue().entrySet()) {
+				byLocation.computeIfAbsent(location.getKey(), key -> new HashMap<>()).put(word.getKey(),
+						location.getValue());
+			}
+		}
+
+		for (var location : byLocation.entrySet()) {
+			addPostings(location.getValue(), location.getKey(), other.getCount(location.getKey()));
+		}
+	}
+
+	@Override
+	public void addPostings(Map<String, ? extends Collection<Integer>> postings, String filePath, Integer count) {
+		synchronized (runs) {
+			checkOpen();
+			super.addPostings(postings, filePath, count);
+
+			long bytes = 0;
+			for (Collection<Integer> positions : postings.values()) {
+				bytes += POSTING_BYTES + (long) POSITION_BYTES * positions.size();
+			}
+			grow(bytes);
+		}
+	}
+
+	@Override
+	public void addTerms(Map<String, TreeMap<String, TreeSet<Integer>>> terms) {
+		synchronized (runs) {
+			checkOpen();
+			super.addTerms(terms);
+
+			long bytes = 0;
+			for (Map<String, TreeSet<Integer>> locations : terms.values()) {
+				for (TreeSet<Integer> positions : locations.values()) {
+					bytes += POSTING_BYTES + (long) POSITION_BYTES * positions.size();
+				}
+			}
+			grow(bytes);
+		}
+	}
+
+	@Override
+	public void setCount(String filePath, int count) {
+		synchronized (runs) {
+			super.setCount(filePath, count);
+		}
+	}
+
+	/**
+	 * Adds to the estimate and writes a run if it reached the budget.
+	 *
+	 * @param bytes the estimated bytes just added
+	 */
+	private void grow(long bytes) {
+		estimate += bytes;
+
+		if (estimate >= budget) {
+			try {
+				spill();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Makes sure no more postings are added once the runs are merged.
+	 */
+	private void checkOpen() {
+		if (merged != null) {
+			throw new IllegalStateException("Unable to add to an index after its runs are merged.");
+		}
+	}
+
+	/**
+	 * Writes the postings in memory to a new run and removes them from memory.
+	 *
+	 * @throws IOException if unable to write the run
+	 */
+	private void spill() throws IOException {
+		Map<String, TreeMap<String, TreeSet<Integer>>> words = super.getWordMap();
+
+		if (!words.isEmpty()) {
+			if (directory == null) {
+				directory = parent == null ? Files.createTempDirectory("index-runs")
+						: Files.createTempDirectory(parent, "index-runs");
+			}
+
+			Path run = directory.resolve("run-" + runs.size() + ".bin");
+
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE))) {
+				out.writeInt(words.size());
+
+				for (var word : words.entrySet()) {
+					writeText(out, word.getKey());
+					out.writeInt(word.getValue().size());
+
+					for (var location : word.getValue().entrySet()) {
+						writeText(out, location.getKey());
+						out.writeInt(location.getValue().size());
+
+						for (Integer position : location.getValue()) {
+							out.writeInt(position);
+						}
+					}
+				}
+			}
+
+			runs.add(run);
+			clearWords();
+		}
+		estimate = 0;
+	}
+
+	/**
+	 * Returns whether any postings were written to disk.
+	 *
+	 * @return true if at least one run was written
+	 */
+	public boolean isSpilled() {
+		synchronized (runs) {
+			return !runs.isEmpty();
+		}
+	}
+
+	/**
+	 * Returns the number of runs written to disk.
+	 *
+	 * @return the number of runs
+	 */
+	public int runs() {
+		synchronized (runs) {
+			return runs.size();
+		}
+	}
+
+	/**
+	 * Merges every run and the postings still in memory into a single sorted
+	 * file, if any run was written. No postings may be added afterwards. Called
+	 * automatically the first time the index is written or searched.
+	 *
+	 * @throws IOException if unable to merge the runs
+	 */
+	public void merge() throws IOException {
+		synchronized (runs) {
+			if (runs.isEmpty() || merged != null) {
+				return;
+			}
+
+			spill();
+
+			Path output = directory.resolve("merged.bin");
+			TreeMap<String, Entry> entries = new TreeMap<>(WORDS);
+			PriorityQueue<RunReader> queue = new PriorityQueue<>();
+
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(output), BUFFER_SIZE))) {
+				for (int i = 0; i < runs.size(); i++) {
+					RunReader reader = new RunReader(runs.get(i), i);
+					if (reader.next()) {
+						queue.add(reader);
+					} else {
+						reader.close();
+					}
+				}
+
+				long offset = 0;
+				out.writeInt(0);
+				offset += Integer.BYTES;
+
+				while (!queue.isEmpty()) {
+					RunReader first = queue.poll();
+					String word = first.word;
+					TreeMap<String, int[]> locations = new TreeMap<>();
+					advance(first, locations, queue);
+
+					while (!queue.isEmpty() && WORDS.compare(queue.peek().word, word) == 0) {
+						advance(queue.poll(), locations, queue);
+					}
+
+					int length = writeRecord(out, word, locations);
+					entries.put(word, new Entry(offset, length, locations.size()));
+					offset += length;
+				}
+			} finally {
+				for (RunReader reader : queue) {
+					reader.close();
+				}
+			}
+
+			// the word count is only known once every run is merged
+			try (FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE)) {
+				out.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, entries.size()), 0);
+			}
+
+			for (Path run : runs) {
+				Files.deleteIfExists(run);
+			}
+
+			merged = output;
+			dictionary = entries;
+			channel = FileChannel.open(output, StandardOpenOption.READ);
+		}
+	}
+
+	/**
+	 * Adds the current locations of the reader to the merged locations, then
+	 * moves the reader to its next word.
+	 *
+	 * @param reader    the reader holding the smallest word
+	 * @param locations the merged locations of the word
+	 * @param queue     the readers that still have words
+	 * @throws IOException if unable to read the run
+	 */
+	private static void advance(RunReader reader, TreeMap<String, int[]> locations, PriorityQueue<RunReader> queue)
+			throws IOException {
+		for (int i = 0; i < reader.locations.size(); i++) {
+			locations.merge(reader.locations.get(i), reader.positions.get(i), SpillingIndex::union);
+		}
+
+		if (reader.next()) {
+			queue.add(reader);
+		} else {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Merges two increasing arrays of positions without duplicates.
+	 *
+	 * @param first  the first positions
+	 * @param second the second positions
+	 * @return the union of both in increasing order
+	 */
+	private static int[] union(int[] first, int[] second) {
+		int[] result = new int[first.length + second.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+
+		while (i < first.length || j < second.length) {
+			int next;
+			if (j == second.length || (i < first.length && first[i] <= second[j])) {
+				next = first[i++];
+			} else {
+				next = second[j++];
+			}
+
+			if (k == 0 || result[k - 1] != next) {
+				result[k++] = next;
+			}
+		}
+		return k == result.length ? result : Arrays.copyOf(result, k);
+	}
+
+	/**
+	 * Writes a single word record.
+	 *
+	 * @param out       the output to write to
+	 * @param word      the word
+	 * @param locations the positions of the word at each location, in order
+	 * @return the number of bytes written
+	 * @throws IOException if unable to write
+	 */
+	private static int writeRecord(DataOutputStream out, String word, Map<String, int[]> locations)
+			throws IOException {
+		int length = writeText(out, word) + Integer.BYTES;
+		out.writeInt(locations.size());
+
+		for (var location : locations.entrySet()) {
+			length += writeText(out, location.getKey()) + Integer.BYTES;
+			out.writeInt(location.getValue().length);
+
+			for (int position : location.getValue()) {
+				out.writeInt(position);
+			}
+			length += Integer.BYTES * location.getValue().length;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes text as its length followed by its UTF-8 bytes.
+	 *
+	 * @param out  the output to write to
+	 * @param text the text to write
+	 * @return the number of bytes written
+	 * @throws IOException if unable to write
+	 */
+	private static int writeText(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		return Integer.BYTES + bytes.length;
+	}
+
+	/**
+	 * Reads text written by {@link #writeText(DataOutputStream, String)}.
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the text
+	 */
+	private static String readText(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+				StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return text;
+	}
+
+	/**
+	 * Reads the record of a word out of the merged file.
+	 *
+	 * @param entry the entry of the word
+	 * @return the record, positioned after the word
+	 * @throws IOException if unable to read the merged file
+	 */
+	private ByteBuffer readRecord(Entry entry) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+				throw new EOFException(merged.toString());
+			}
+		}
+		buffer.flip();
+
+		readText(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Reads the number of positions at each location of a word out of the merged
+	 * file.
+	 *
+	 * @param word the word to look up
+	 * @return the number of positions at each location in order, or an empty map
+	 *         if the word is not indexed
+	 * @throws IOException if unable to read the merged file
+	 */
+	private Map<String, Integer> readCounts(String word) throws IOException {
+		Entry entry = dictionary.get(word);
+
+		if (entry == null) {
+			return Collections.emptyMap();
+		}
+
+		ByteBuffer buffer = readRecord(entry);
+		int size = buffer.getInt();
+		Map<String, Integer> counts = new LinkedHashMap<>();
+
+		for (int i = 0; i < size; i++) {
+			String location = readText(buffer);
+			int positions = buffer.getInt();
+			buffer.position(buffer.position() + Integer.BYTES * positions);
+			counts.put(location, positions);
+		}
+		return counts;
+	}
+
+	/**
+	 * Reads the positions at each location of a word out of the merged file.
+	 *
+	 * @param word the word to look up
+	 * @return the positions at each location, or an empty map if the word is not
+	 *         indexed
+	 */
+	private Map<String, TreeSet<Integer>> readPositions(String word) {
+		Entry entry = dictionary.get(word);
+
+		if (entry == null) {
+			return Collections.emptyMap();
+		}
+
+		try {
+			ByteBuffer buffer = readRecord(entry);
+			int size = buffer.getInt();
+			TreeMap<String, TreeSet<Integer>> locations = new TreeMap<>();
+
+			for (int i = 0; i < size; i++) {
+				String location = readText(buffer);
+				int positions = buffer.getInt();
+				TreeSet<Integer> set = new TreeSet<>();
+
+				for (int j = 0; j < positions; j++) {
+					set.add(buffer.getInt());
+				}
+				locations.put(location, set);
+			}
+			return locations;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Merges the runs if needed and reports whether the merged file should be
+	 * used instead of the postings in memory.
+	 *
+	 * @return true if the merged file holds the postings
+	 */
+	private boolean useMerged() {
+		try {
+			merge();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		synchronized (runs) {
+			return merged != null;
+		}
+	}
+
+	@Override
+	public void mapJson(Path path) throws IOException {
+		if (!useMerged()) {
+			super.mapJson(path);
+			return;
+		}
+
+		try (RunReader reader = new RunReader(merged, 0); FastJsonWriter writer = new FastJsonWriter(path)) {
+			writer.write('{');
+			boolean first = true;
+
+			while (reader.next()) {
+				writer.write(first ? "\n" : ",\n");
+				writer.writeQuote(reader.word, 1);
+				writer.write(": ");
+				writer.writeNest(reader.postings(), 1);
+				first = false;
+			}
+
+			writer.write('\n');
+			writer.write('}');
+		}
+	}
+
+	@Override
+	public void writeIndex(Path path, OutputFormat format) throws IOException {
+		// merge before the read lock is taken, since the last spill needs the write lock
+		if (!useMerged()) {
+			super.writeIndex(path, format);
+			return;
+		}
+
+		if (format == OutputFormat.JSON) {
+			mapJson(path);
+			return;
+		}
+
+		try (RunReader reader = new RunReader(merged, 0);
+				RecordWriter writer = new RecordWriter(path, format, RecordWriter.Kind.INDEX)) {
+			while (reader.next()) {
+				writer.writeTerm(reader.word, reader.postings());
+			}
+		}
+	}
+
+	@Override
+	public void mapJson(Path path, TaskQueue queuer) throws IOException {
+		if (useMerged()) {
+			// the merged file is read in order, so it is written on one thread
+			mapJson(path);
+		} else {
+			super.mapJson(path, queuer);
+		}
+	}
+
+	@Override
+	public ArrayList<QuerySearchResults> exactSearch(TreeSet<String> queries, Deadline deadline) {
+		if (!useMerged()) {
+			return super.exactSearch(queries, deadline);
+		}
+
+		return searchMerged(new ArrayList<>(queries), false, deadline);
+	}
+
+	@Override
+	public ArrayList<QuerySearchResults> partialSearch(TreeSet<String> queries, Deadline deadline) {
+		if (!useMerged()) {
+			return super.partialSearch(queries, deadline);
+		}
+
+		// every expansion is kept, even if an earlier query already expanded to it
+		List<String> words = new ArrayList<>();
+		boolean truncated = false;
+		int limit = getExpansionLimit();
+
+		for (String query : queries) {
+			if (deadline.check()) {
+				truncated = true;
+				break;
+			}
+
+			int first = words.size();
+
+			for (String partial : dictionary.tailMap(query).keySet()) {
+				if (!partial.startsWith(query)) {
+					break;
+				}
+				words.add(partial);
+			}
+
+			if (limit > 0 && words.size() - first > limit) {
+				limit(words.subList(first, words.size()), limit, word -> dictionary.get(word).locations);
+				truncated = true;
+			}
+		}
+
+		return searchMerged(words, truncated, deadline);
+	}
+
+	@Override
+	public List<ArrayList<QuerySearchResults>> searchBatch(List<TreeSet<String>> queries, boolean exact) {
+		if (!useMerged()) {
+			return super.searchBatch(queries, exact);
+		}
+
+		// postings live in the merged file, so each query reads its own
+		List<ArrayList<QuerySearchResults>> results = new ArrayList<>(queries.size());
+		for (TreeSet<String> query : queries) {
+			results.add(search(query, exact));
+		}
+		return results;
+	}
+
+	/**
+	 * Scores every location of the words by reading their postings out of the
+	 * merged file. Matches how the in-memory search adds up each word.
+	 *
+	 * @param words     the words to count, including repeats
+	 * @param truncated whether some matching words were already left out
+	 * @param deadline  the time budget of the search, checked before each word
+	 * @return the sorted search results
+	 */
+	private SearchResults searchMerged(List<String> words, boolean truncated, Deadline deadline) {
+		Map<String, Integer> totals = new LinkedHashMap<>();
+		Map<String, Map<String, Integer>> read = new HashMap<>();
+
+		try {
+			for (String word : words) {
+				if (deadline.check()) {
+					break;
+				}
+
+				Map<String, Integer> counts = read.get(word);
+				if (counts == null) {
+					counts = readCounts(word);
+					read.put(word, counts);
+				}
+
+				for (var location : counts.entrySet()) {
+					totals.merge(location.getKey(), location.getValue(), Integer::sum);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		SearchResults results = new SearchResults(totals.size());
+		for (var total : totals.entrySet()) {
+			QuerySearchResults result = new QuerySearchResults(total.getKey());
+			result.callNumbers(total.getValue(), (double) total.getValue() / Double.valueOf(getCount(total.getKey())));
+			results.add(result);
+		}
+
+		Collections.sort(results);
+		results.setTruncated(truncated || deadline.isExpired());
+		return results;
+	}
+
+	@Override
+	public Set<String> getWord() {
+		if (!useMerged()) {
+			return super.getWord();
+		}
+		return Collections.unmodifiableSet(dictionary.keySet());
+	}
+
+	@Override
+	public boolean hasWord(String word) {
+		if (!useMerged()) {
+			return super.hasWord(word);
+		}
+		return dictionary.containsKey(word);
+	}
+
+	@Override
+	public Set<Integer> getIndex(String word, String filePath) {
+		if (!useMerged()) {
+			return super.getIndex(word, filePath);
+		}
+
+		TreeSet<Integer> positions = readPositions(word).get(filePath);
+		return positions == null ? null : Collections.unmodifiableSet(positions);
+	}
+
+	@Override
+	public Set<String> getPath(String word) {
+		if (!useMerged()) {
+			return super.getPath(word);
+		}
+		return Collections.unmodifiableSet(readPositions(word).keySet());
+	}
+
+	/**
+	 * Returns the words in memory until the runs are merged. After the merge the
+	 * postings are only on disk, so there is no map to return.
+	 *
+	 * @throws UnsupportedOperationException if the runs were merged
+	 */
+	@Override
+	public Map<String, TreeMap<String, TreeSet<Integer>>> getWordMap() {
+		if (!useMerged()) {
+			return super.getWordMap();
+		}
+		throw new UnsupportedOperationException("The postings are on disk after a merge");
+	}
+
+	@Override
+	public boolean hasIndex(String word, String filePath, Integer index) {
+		if (!useMerged()) {
+			return super.hasIndex(word, filePath, index);
+		}
+
+		TreeSet<Integer> positions = readPositions(word).get(filePath);
+		return positions != null && positions.contains(index);
+	}
+
+	@Override
+	public boolean hasPath(String word, String filePath) {
+		if (!useMerged()) {
+			return super.hasPath(word, filePath);
+		}
+
+		try {
+			return readCounts(word).containsKey(filePath);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int sizeIndex(String word, String filePath) {
+		if (!useMerged()) {
+			return super.sizeIndex(word, filePath);
+		}
+
+		try {
+			return readCounts(word).getOrDefault(filePath, 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public int sizePath(String word) {
+		if (!useMerged()) {
+			return super.sizePath(word);
+		}
+
+		Entry entry = dictionary.get(word);
+		return entry == null ? 0 : entry.locations;
+	}
+
+	@Override
+	public int sizeWord() {
+		if (!useMerged()) {
+			return super.sizeWord();
+		}
+		return dictionary.size();
+	}
+
+	/**
+	 * Closes the merged file and deletes every file written to disk, along with
+	 * the directory holding them. The index must not be used afterwards.
+	 *
+	 * @throws IOException if unable to close or delete the files
+	 */
+	public void close() throws IOException {
+		synchronized (runs) {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+
+			if (directory != null) {
+				for (Path run : runs) {
+					Files.deleteIfExists(run);
+				}
+
+				if (merged != null) {
+					Files.deleteIfExists(merged);
+				}
+
+				Files.deleteIfExists(directory);
+				directory = null;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (runs) {
+			if (merged == null) {
+				return super.toString();
+			}
+			return "[" + dictionary.size() + " words merged from " + runs.size() + " runs]";
+		}
+	}
+
+	/**
+	 * Location and length of a word record in the merged file, and the number of
+	 * locations of the word.
+	 */
+	private static class Entry {
+		/** The offset of the record. */
+		private final long offset;
+
+		/** The length of the record in bytes. */
+		private final int length;
+
+		/** The number of locations the word is found in. */
+		private final int locations;
+
+		/**
+		 * Creates an entry.
+		 *
+		 * @param offset    the offset of the record
+		 * @param length    the length of the record in bytes
+		 * @param locations the number of locations the word is found in
+		 */
+		private Entry(long offset, int length, int locations) {
+			this.offset = offset;
+			this.length = length;
+			this.locations = locations;
+		}
+	}
+
+	/**
+	 * Reads the records of a run one word at a time.
+	 */
+	private static class RunReader implements Comparable<RunReader>, AutoCloseable {
+		/** The run being read. */
+		private final DataInputStream in;
+
+		/** The order of the run, used to break ties between equal words. */
+		private final int order;
+
+		/** The number of words left in the run. */
+		private int remaining;
+
+		/** The current word. */
+		private String word;
+
+		/** The locations of the current word. */
+		private final List<String> locations;
+
+		/** The positions of the current word at each location. */
+		private final List<int[]> positions;
+
+		/**
+		 * Opens a run.
+		 *
+		 * @param run   the run to read
+		 * @param order the order of the run
+		 * @throws IOException if unable to open the run
+		 */
+		private RunReader(Path run, int order) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+			this.order = order;
+			this.remaining = in.readInt();
+			this.locations = new ArrayList<>();
+			this.positions = new ArrayList<>();
+		}
+
+		/**
+		 * Returns the positions of the current word at each location, sorted by
+		 * location.
+		 *
+		 * @return the positions at each location
+		 */
+		private TreeMap<String, List<Integer>> postings() {
+			TreeMap<String, List<Integer>> postings = new TreeMap<>();
+			for (int i = 0; i < locations.size(); i++) {
+				List<Integer> list = new ArrayList<>(positions.get(i).length);
+				for (int position : positions.get(i)) {
+					list.add(position);
+				}
+				postings.put(locations.get(i), list);
+			}
+			return postings;
+		}
+
+		/**
+		 * Moves to the next word record.
+		 *
+		 * @return true if there was another word
+		 * @throws IOException if unable to read the run
+		 */
+		private boolean next() throws IOException {
+			locations.clear();
+			positions.clear();
+
+			if (remaining == 0) {
+				word = null;
+				return false;
+			}
+
+			remaining--;
+			word = readText();
+			int size = in.readInt();
+
+			for (int i = 0; i < size; i++) {
+				locations.add(readText());
+				int[] array = new int[in.readInt()];
+				for (int j = 0; j < array.length; j++) {
+					array[j] = in.readInt();
+				}
+				positions.add(array);
+			}
+			return true;
+		}
+
+		/**
+		 * Reads text written by {@link SpillingIndex#writeText(DataOutputStream, String)}.
+		 *
+		 * @return the text
+		 * @throws IOException if unable to read the run
+		 */
+		private String readText() throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public int compareTo(RunReader other) {
+			int compare = WORDS.compare(word, other.word);
+			return compare != 0 ? compare : Integer.compare(order, other.order);
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
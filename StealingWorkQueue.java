@@ -0,0 +1,313 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A work queue where every worker thread has its own deque of tasks. Tasks
+ * added by a worker go to the front of its own deque and are run next, while
+ * the data they use is still in cache. Tasks added from other threads are
+ * spread across the deques in turn. A worker with nothing left takes a task from
+ * the back of another worker's deque, and parks when no deque has work.
+ * Adding a task wakes at most one parked worker instead of every waiting one.
+ *
+ * The deques are lock-free, and the pending work is counted with two
+ * {@link LongAdder} counters of added and finished tasks, so adding and
+ * finishing tasks does not contend on a shared monitor. The
+ * {@link #finish()}, {@link #shutdown()} and {@link #join()} methods keep the
+ * same meaning as in {@link WorkQueue}.
+ *
+ * @author Jadon Huang
+ */
+public class StealingWorkQueue implements TaskQueue {
+	/** Workers that each run the tasks of their own deque first. */
+	private final StealingWorker[] workers;
+
+	/** Workers that found no work and may be parked. */
+	private final ConcurrentLinkedQueue<StealingWorker> idle;
+
+	/** Picks the deque for the next task added from outside the workers. */
+	private final AtomicInteger next;
+
+	/** Number of tasks added. */
+	private final LongAdder submitted;
+
+	/** Number of tasks finished. */
+	private final LongAdder completed;
+
+	/** Number of threads waiting in {@link #finish()}. */
+	private volatile int waiting;
+
+	/** Used to signal the workers should terminate. */
+	private volatile boolean shutdown;
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Starts a work stealing queue with the default number of threads.
+	 */
+	public StealingWorkQueue() {
+		this(WorkQueue.DEFAULT);
+	}
+
+	/**
+	 * Starts a work stealing queue with the specified number of threads.
+	 *
+	 * @param threads number of worker threads; should be greater than 1
+	 */
+	public StealingWorkQueue(int threads) {
+		this.workers = new StealingWorker[Math.max(1, threads)];
+		this.idle = new ConcurrentLinkedQueue<>();
+		this.next = new AtomicInteger();
+		this.submitted = new LongAdder();
+		this.completed = new LongAdder();
+		this.waiting = 0;
+		this.shutdown = false;
+
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new StealingWorker(i);
+		}
+
+		// start the threads once every deque exists, since workers steal from each other
+		for (StealingWorker worker : workers) {
+			worker.start();
+		}
+
+		log.debug("Work stealing queue initialized with {} worker threads.", workers.length);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		submitted.increment();
+
+		if (Thread.currentThread() instanceof StealingWorker worker && worker.owner() == this) {
+			worker.deque.addFirst(task);
+		} else {
+			int index = Math.floorMod(next.getAndIncrement(), workers.length);
+			workers[index].deque.addLast(task);
+		}
+
+		wakeOne();
+	}
+
+	/**
+	 * Unparks one idle worker, if any, so it can look for the new task.
+	 */
+	private void wakeOne() {
+		StealingWorker worker;
+
+		while ((worker = idle.poll()) != null) {
+			// skip workers that already found work after they were listed
+			if (worker.parked.compareAndSet(true, false)) {
+				LockSupport.unpark(worker);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of tasks added but not finished. The finished tasks are
+	 * read before the added ones, and a task is always added before it finishes,
+	 * so a result of 0 means no task was pending at some moment during the call.
+	 *
+	 * @return number of pending tasks
+	 */
+	private long pending() {
+		long finished = completed.sum();
+		return submitted.sum() - finished;
+	}
+
+	/**
+	 * Counts a finished task and wakes the threads waiting in {@link #finish()}
+	 * once no work is pending.
+	 */
+	private void decrement() {
+		completed.increment();
+
+		if (waiting > 0 && pending() == 0) {
+			synchronized (this) {
+				this.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void finish() {
+		log.debug("waiting for work");
+		waiting++;
+
+		try {
+			while (pending() > 0) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					log.debug("Interrupted");
+				}
+			}
+		} finally {
+			waiting--;
+		}
+		log.debug("finished work");
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		log.debug("Work queue triggering shutdown...");
+
+		for (StealingWorker worker : workers) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	@Override
+	public void join() {
+		try {
+			finish();
+			shutdown();
+
+			for (StealingWorker worker : workers) {
+				worker.join();
+			}
+
+			log.debug("All worker threads terminated.");
+		} catch (InterruptedException e) {
+			System.err.println("Warning: Work queue interrupted while joining.");
+			log.catching(Level.DEBUG, e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public int size() {
+		return workers.length;
+	}
+
+	/**
+	 * Runs the tasks of its own deque from the front, then steals from the back
+	 * of the other deques, and parks when there is no work anywhere.
+	 *
+	 * <p>
+	 * If a shutdown is detected, will exit instead of taking new work.
+	 */
+	private class StealingWorker extends Thread {
+		/** The tasks of this worker. */
+		private final ConcurrentLinkedDeque<Runnable> deque;
+
+		/** The position of this worker in the queue. */
+		private final int index;
+
+		/** Whether this worker is listed as idle and has not been woken yet. */
+		private final AtomicBoolean parked;
+
+		/**
+		 * Initializes a worker thread with a custom name.
+		 *
+		 * @param index the position of this worker in the queue
+		 */
+		private StealingWorker(int index) {
+			this.deque = new ConcurrentLinkedDeque<>();
+			this.index = index;
+			this.parked = new AtomicBoolean(false);
+			setName("Worker" + getName());
+		}
+
+		/**
+		 * Returns the queue this worker belongs to.
+		 *
+		 * @return the queue
+		 */
+		private StealingWorkQueue owner() {
+			return StealingWorkQueue.this;
+		}
+
+		/**
+		 * Takes the next task of this worker, or steals one from another worker.
+		 *
+		 * @return the task, or null if no deque has work
+		 */
+		private Runnable take() {
+			Runnable task = deque.pollFirst();
+
+			if (task == null && workers.length > 1) {
+				// start at a random worker so thieves spread out
+				int start = ThreadLocalRandom.current().nextInt(workers.length);
+
+				for (int i = 0; i < workers.length && task == null; i++) {
+					StealingWorker victim = workers[(start + i) % workers.length];
+
+					if (victim != this) {
+						task = victim.deque.pollLast();
+					}
+				}
+			}
+			return task;
+		}
+
+		/**
+		 * Lists this worker as idle, looks for work once more so a task added
+		 * before the listing is not missed, and parks until woken.
+		 */
+		private void waitForWork() {
+			parked.set(true);
+			idle.add(this);
+
+			Runnable task = take();
+
+			if (task != null) {
+				parked.set(false);
+				runTask(task);
+				return;
+			}
+
+			if (!shutdown) {
+				log.debug("Work queue worker waiting...");
+				LockSupport.park(this);
+			}
+			parked.set(false);
+		}
+
+		/**
+		 * Runs a task and counts it as finished.
+		 *
+		 * @param task the task to run
+		 */
+		private void runTask(Runnable task) {
+			try {
+				log.trace("Work queue worker {} found work.", index);
+				task.run();
+			} catch (RuntimeException e) {
+				// catch runtime exceptions to avoid leaking threads
+				System.err.printf("Warning: Worker thread %s encountered an exception while running.%n",
+						this.getName());
+				log.catching(Level.DEBUG, e);
+			}
+			decrement();
+		}
+
+		@Override
+		public void run() {
+			while (!shutdown) {
+				Runnable task = take();
+
+				if (task == null) {
+					waitForWork();
+				} else {
+					runTask(task);
+				}
+			}
+
+			log.debug("Worker thread terminating...");
+		}
+	}
+}
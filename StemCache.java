@@ -0,0 +1,207 @@
+package edu.usfca.cs272;
+
+import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Bounded word to stem cache wrapped around a {@link Stemmer}. Words and stems
+ * are kept in parallel open-addressed arrays with linear probing, so lookups do
+ * not box or allocate. When the table reaches its bound it is cleared and
+ * refilled with the words seen from then on. Stems are interned in
+ * {@link SymbolTable#TERMS}, so every thread hands out the same stem strings.
+ *
+ * Warning: This class is not thread-safe. Use {@link #local()} to get the cache
+ * belonging to the current thread.
+ *
+ * @author Jadon Huang
+ */
+public class StemCache implements Stemmer {
+	/** The default number of words each cache holds before it is cleared. */
+	public static final int DEFAULT_LIMIT = 1 << 14;
+
+	/** Lookups answered from any cache, for hit rate reporting. */
+	private static final LongAdder totalHits = new LongAdder();
+
+	/** Lookups passed on to the stemmer by any cache. */
+	private static final LongAdder totalMisses = new LongAdder();
+
+	/** Number of caches created by {@link #local()}. */
+	private static final LongAdder threads = new LongAdder();
+
+	/** One cache per thread wrapping the default stemmer for English. */
+	private static final ThreadLocal<StemCache> local = ThreadLocal.withInitial(() -> {
+		threads.increment();
+		return new StemCache(new SnowballStemmer(ENGLISH), DEFAULT_LIMIT);
+	});
+
+	/** The stemmer used on a cache miss. */
+	private final Stemmer stemmer;
+
+	/** Cached words, indexed by hash slot. */
+	private final String[] words;
+
+	/** Cached stems, in the same slot as their word. */
+	private final String[] stems;
+
+	/** Mask used to turn a hash into a slot. */
+	private final int mask;
+
+	/** Number of words stored before the table is cleared. */
+	private final int limit;
+
+	/** Number of words currently stored. */
+	private int size;
+
+	/** Number of lookups answered from the table. */
+	private long hits;
+
+	/** Number of lookups passed on to the stemmer. */
+	private long misses;
+
+	/**
+	 * Creates a cache in front of the given stemmer. The cache holds exactly
+	 * {@code limit} words before it is cleared, in a table sized to the next
+	 * power of two at least twice the limit so probes stay short.
+	 *
+	 * @param stemmer the stemmer to use on a miss
+	 * @param limit   the number of words to hold before clearing, at least 1
+	 */
+	public StemCache(Stemmer stemmer, int limit) {
+		this.limit = Math.max(1, limit);
+		int capacity = Integer.highestOneBit(2 * this.limit - 1) << 1;
+
+		this.stemmer = stemmer;
+		this.words = new String[capacity];
+		this.stems = new String[capacity];
+		this.mask = capacity - 1;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the cache belonging to the current thread.
+	 *
+	 * @return the thread local stem cache
+	 */
+	public static StemCache local() {
+		return local.get();
+	}
+
+	@Override
+	public CharSequence stem(CharSequence word) {
+		return stem(word.toString());
+	}
+
+	/**
+	 * Returns the stem of the word, using the cached stem when possible.
+	 *
+	 * @param word the word to stem
+	 * @return the stemmed word
+	 */
+	public String stem(String word) {
+		int hash = word.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		String cached;
+		while ((cached = words[slot]) != null) {
+			if (cached.equals(word)) {
+				hits++;
+				totalHits.increment();
+				return stems[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		misses++;
+		totalMisses.increment();
+		String stem = SymbolTable.TERMS.intern(stemmer.stem(word).toString());
+
+		if (size == limit) {
+			clear();
+			return put(word, stem);
+		}
+
+		words[slot] = word;
+		stems[slot] = stem;
+		size++;
+		return stem;
+	}
+
+	/**
+	 * Stores the word and stem in an empty table.
+	 *
+	 * @param word the word to store
+	 * @param stem the stem of the word
+	 * @return the stem
+	 */
+	private String put(String word, String stem) {
+		int hash = word.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & mask;
+
+		words[slot] = word;
+		stems[slot] = stem;
+		size = 1;
+		return stem;
+	}
+
+	/**
+	 * Removes every cached word.
+	 */
+	public void clear() {
+		Arrays.fill(words, null);
+		Arrays.fill(stems, null);
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 *
+	 * @return number of hits
+	 */
+	public long hits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that had to be stemmed.
+	 *
+	 * @return number of misses
+	 */
+	public long misses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache.
+	 *
+	 * @return hit rate between 0 and 1
+	 */
+	public double hitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Returns a summary of the hit rate over every cache, including the caches
+	 * of threads that have already ended.
+	 *
+	 * @return hit and miss totals across all threads
+	 */
+	public static String summary() {
+		long hits = totalHits.sum();
+		long misses = totalMisses.sum();
+		long total = hits + misses;
+		double rate = total == 0 ? 0 : (double) hits / total;
+		return String.format("Stem cache: %d hits, %d misses, %.2f%% hit rate over %d threads", hits, misses,
+				rate * 100, threads.sum());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%d hits, %d misses, %d cached]", hits, misses, size);
+	}
+}
@@ -0,0 +1,85 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe table of canonical strings. Interning a string returns the one
+ * instance of equal text stored in the table, so equal terms held by many
+ * maps, caches, and threads share a single string.
+ *
+ * The shared {@link #TERMS} table only matters while an index is being built.
+ * Once it is built the index holds its own keys, so the table should be
+ * emptied with {@link #clearAll()} rather than keep every string reachable for
+ * the rest of the run. Paths are not interned while crawling, since each file
+ * already passes a single string for all of its words.
+ *
+ * @author Jadon Huang
+ */
+public class SymbolTable {
+	/** Canonical stems, shared by every stem cache and index. */
+	public static final SymbolTable TERMS = new SymbolTable();
+
+	/** Maps each string to its canonical instance. */
+	private final ConcurrentHashMap<String, String> symbols;
+
+	/**
+	 * Creates an empty symbol table.
+	 */
+	public SymbolTable() {
+		this.symbols = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns the canonical instance of the text, adding it if it is new.
+	 *
+	 * @param text the text to intern
+	 * @return the canonical string equal to the text
+	 */
+	public String intern(String text) {
+		String canonical = symbols.get(text);
+
+		if (canonical == null) {
+			canonical = symbols.putIfAbsent(text, text);
+			return canonical == null ? text : canonical;
+		}
+		return canonical;
+	}
+
+	/**
+	 * Returns the number of canonical strings.
+	 *
+	 * @return the number of strings in the table
+	 */
+	public int size() {
+		return symbols.size();
+	}
+
+	/**
+	 * Removes every string from the table. Strings interned earlier stay valid
+	 * but are no longer shared with strings interned afterwards.
+	 */
+	public void clear() {
+		symbols.clear();
+	}
+
+	/**
+	 * Empties the shared term table, such as once indexing is done.
+	 */
+	public static void clearAll() {
+		TERMS.clear();
+	}
+
+	/**
+	 * Returns a summary of the shared term table.
+	 *
+	 * @return the size of the table
+	 */
+	public static String summary() {
+		return String.format("Symbol table: %d terms", TERMS.size());
+	}
+
+	@Override
+	public String toString() {
+		return "[" + symbols.size() + " symbols]";
+	}
+}
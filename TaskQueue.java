@@ -0,0 +1,67 @@
+package edu.usfca.cs272;
+
+/**
+ * The operations shared by the work queues that run crawling, loading, writing
+ * and querying tasks, so callers can use any of them.
+ *
+ * @see WorkQueue
+ * @see VirtualWorkQueue
+ * @see StealingWorkQueue
+ *
+ * @author Jadon Huang
+ */
+public interface TaskQueue {
+	/**
+	 * Adds a task to the queue and counts it as pending until it finishes.
+	 *
+	 * @param task work request (in the form of a {@link Runnable} object)
+	 */
+	public void execute(Runnable task);
+
+	/**
+	 * Waits for all pending tasks to be finished. Does not stop the queue, so it
+	 * can continue to be used.
+	 */
+	public void finish();
+
+	/**
+	 * Asks the queue to shutdown. Tasks not started yet will not be run, but
+	 * tasks in progress will not be interrupted.
+	 */
+	public void shutdown();
+
+	/**
+	 * Waits for all the tasks to be finished and the threads of the queue to
+	 * terminate. The queue cannot be reused after this call completes.
+	 */
+	public void join();
+
+	/**
+	 * Returns the number of threads the queue runs CPU-bound work on.
+	 *
+	 * @return number of threads
+	 */
+	public int size();
+
+	/**
+	 * Runs CPU-bound work on behalf of a task that is already running on this
+	 * queue. By default the threads of the queue are already limited in number,
+	 * so the work simply runs on the calling thread.
+	 *
+	 * @param work the CPU-bound work to run
+	 */
+	public default void compute(Runnable work) {
+		work.run();
+	}
+
+	/**
+	 * Returns whether this queue runs {@link #compute(Runnable)} work on a
+	 * separate pool from the threads that run tasks. When it does, tasks should
+	 * finish their blocking I/O before handing off the CPU-bound work.
+	 *
+	 * @return true if compute work runs on a separate pool
+	 */
+	public default boolean hasComputePool() {
+		return false;
+	}
+}
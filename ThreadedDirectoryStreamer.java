@@ -5,6 +5,8 @@ import java.io.UncheckedIOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
 
 /**
  * DirectorySteamer recursively traverses all given paths and returns a list of
@@ -21,14 +23,51 @@ public class ThreadedDirectoryStreamer {
 	 * @param queuer the work queue
 	 * @throws IOException to throw
 	 */
-	public static void processDirectory(Path path, ThreadedInvertedIndex index, WorkQueue queuer) throws IOException {
+	public static void processDirectory(Path path, ThreadedInvertedIndex index, TaskQueue queuer) throws IOException {
+		processDirectory(path, index, queuer, new CrawlOptions());
+	}
+
+	/**
+	 * Multithreaded Process Directory method to call traverse directory if
+	 * directory else execute threads, using the given crawl settings
+	 * 
+	 * @param path    the file path
+	 * @param index   the Threaded Inverted Index class
+	 * @param queuer  the work queue
+	 * @param options the crawl settings
+	 * @throws IOException to throw
+	 */
+	public static void processDirectory(Path path, ThreadedInvertedIndex index, TaskQueue queuer,
+			CrawlOptions options) throws IOException {
 		// System.out.println("inside process directory");
 		// System.out.println("path: " + path);
+		CrawlSchedule schedule = options.isLargestFirst() ? new CrawlSchedule(options.getBatchBytes()) : null;
+
 		if (Files.isDirectory(path)) {
-			traverseDirectory(path, index, queuer);
+			if (options.isParallelWalk()) {
+				queuer.execute(new DirectoryTask(path, index, queuer, options, schedule));
+			} else {
+				traverseDirectory(path, index, queuer, options, schedule);
+			}
 		} else {
 			// System.out.println("process directory task");
-			queuer.execute(new Task(path, index));
+			submit(path, -1, index, queuer, options, schedule);
+		}
+
+		if (schedule != null) {
+			// every size is known once the walk is done
+			queuer.finish();
+			schedule.dispatch(new CrawlSchedule.Submitter() {
+				@Override
+				public void submit(Path file, long size) throws IOException {
+					ThreadedDirectoryStreamer.submit(file, size, index, queuer, options, null);
+				}
+
+				@Override
+				public Runnable task(Path file) {
+					return new Task(file, index, queuer, options);
+				}
+			}, queuer);
 		}
 		queuer.finish();
 	}
@@ -39,34 +78,169 @@ public class ThreadedDirectoryStreamer {
 	 * @param directory the path directory to traverse
 	 * @param index     the Threaded Inverted Index class reference
 	 * @param queuer    the work queue to execute
+	 * @param options   the crawl settings
+	 * @param schedule  collects the files to dispatch later, or null to submit
+	 *                  them as they are found
 	 * @throws IOException to throw
 	 */
-	private static void traverseDirectory(Path directory, ThreadedInvertedIndex index, WorkQueue queuer)
-			throws IOException {
+	private static void traverseDirectory(Path directory, ThreadedInvertedIndex index, TaskQueue queuer,
+			CrawlOptions options, CrawlSchedule schedule) throws IOException {
 
 		try (DirectoryStream<Path> directoryList = Files.newDirectoryStream(directory)) {
 
 			for (Path path : directoryList) {
 
 				if (!Files.isDirectory(path) && (isTextFile(path))) {
-					queuer.execute(new Task(path, index));
+					submit(path, -1, index, queuer, options, schedule);
 				}
 
 				if (Files.isDirectory(path)) {
-					traverseDirectory(path, index, queuer);
+					traverseDirectory(path, index, queuer, options, schedule);
 				}
 			}
 		}
 	}
+
+	/**
+	 * Adds the work needed to index a single file to the work queue. Files at or
+	 * above the chunk threshold are split across several tasks, and each text
+	 * entry of a zip archive gets its own task. When scheduling, the file is only
+	 * recorded with its size.
+	 * 
+	 * @param path     the file to index
+	 * @param size     the file size if already known, or -1 to look it up when
+	 *                 needed
+	 * @param index    the Threaded Inverted Index class reference
+	 * @param queuer   the work queue to execute
+	 * @param options  the crawl settings
+	 * @param schedule collects the files to dispatch later, or null to submit
+	 *                 the file now
+	 * @throws IOException to throw
+	 */
+	private static void submit(Path path, long size, ThreadedInvertedIndex index, TaskQueue queuer,
+			CrawlOptions options, CrawlSchedule schedule) throws IOException {
+		if (schedule != null) {
+			schedule.add(path, sizeOf(path, size));
+		} else if (ArchiveReader.isZip(path)) {
+			ArchiveReader.submit(path, index, queuer);
+		} else if (options.getChunkThreshold() > 0 && !ArchiveReader.isGzip(path)
+				&& options.isChunked(sizeOf(path, size))) {
+			ChunkedFileIndexer.submit(path, index, queuer);
+		} else {
+			queuer.execute(new Task(path, index, queuer, options));
+		}
+	}
 	
 	/**
-	 * Checks if given path is a text file
+	 * Returns the size of a file for scheduling. A file whose size cannot be read,
+	 * such as a broken link, counts as empty so its own task reports the error
+	 * instead of the walk.
+	 *
+	 * @param path the file
+	 * @param size the file size if already known, or -1 to look it up
+	 * @return the file size, or 0 if it cannot be read
+	 */
+	private static long sizeOf(Path path, long size) {
+		if (size >= 0) {
+			return size;
+		}
+
+		try {
+			return Files.size(path);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Checks if given path is a text file, compressed text file, or zip archive
 	 * 
 	 * @param path the current path location
-	 * @return true/false if given path is a .txt .text file
+	 * @return true/false if given path is a .txt .text .txt.gz .text.gz or .zip
+	 *         file
+	 * @see DirectoryStreamer#isTextFile(Path)
 	 */
 	public static boolean isTextFile(Path path) {
-		return path.toString().toLowerCase().endsWith(".txt") || path.toString().toLowerCase().endsWith(".text");
+		return DirectoryStreamer.isTextFile(path);
+	}
+
+	/**
+	 * Task that lists a single directory. Subdirectories become new directory
+	 * tasks and text files are handed straight to the indexing tasks, so the walk
+	 * itself runs in parallel on the work queue. The attributes of each entry are
+	 * read once and reused for both the directory check and the file size.
+	 * 
+	 * @author Jadon Huang
+	 *
+	 */
+	public static class DirectoryTask implements Runnable {
+
+		/**
+		 * the directory to list
+		 */
+		private final Path directory;
+
+		/**
+		 * Threaded inverted index
+		 */
+		private final ThreadedInvertedIndex index;
+
+		/**
+		 * the work queue to add found work to
+		 */
+		private final TaskQueue queuer;
+
+		/**
+		 * the crawl settings
+		 */
+		private final CrawlOptions options;
+
+		/**
+		 * collects the files to dispatch later, or null to submit them now
+		 */
+		private final CrawlSchedule schedule;
+
+		/**
+		 * constructor declaration
+		 * 
+		 * @param directory the directory to list
+		 * @param index     to add to
+		 * @param queuer    the work queue to add found work to
+		 * @param options   the crawl settings
+		 * @param schedule  collects the files to dispatch later, or null to submit
+		 *                  them as they are found
+		 */
+		public DirectoryTask(Path directory, ThreadedInvertedIndex index, TaskQueue queuer, CrawlOptions options,
+				CrawlSchedule schedule) {
+			this.directory = directory;
+			this.index = index;
+			this.queuer = queuer;
+			this.options = options;
+			this.schedule = schedule;
+		}
+
+		@Override
+		public void run() throws UncheckedIOException {
+			try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory)) {
+				for (Path path : listing) {
+					BasicFileAttributes attributes = null;
+
+					try {
+						attributes = Files.readAttributes(path, BasicFileAttributes.class);
+					} catch (IOException e) {
+						// treated like any unreadable file below
+					}
+
+					if (attributes != null && attributes.isDirectory()) {
+						queuer.execute(new DirectoryTask(path, index, queuer, options, schedule));
+					} else if (isTextFile(path)) {
+						submit(path, attributes == null ? -1 : attributes.size(), index, queuer, options, schedule);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 
 	/**
@@ -87,6 +261,16 @@ public class ThreadedDirectoryStreamer {
 		 */
 		private final Path path;
 
+		/**
+		 * the work queue running this task, or null if not needed
+		 */
+		private final TaskQueue queuer;
+
+		/**
+		 * the crawl settings
+		 */
+		private final CrawlOptions options;
+
 		/**
 		 * constructor declaration
 		 * 
@@ -94,8 +278,23 @@ public class ThreadedDirectoryStreamer {
 		 * @param index to add to
 		 */
 		public Task(Path path, ThreadedInvertedIndex index) {
+			this(path, index, null, new CrawlOptions());
+		}
+
+		/**
+		 * constructor declaration for a task that hands its stemming and merging to
+		 * the compute pool of the work queue, if it has one
+		 * 
+		 * @param path    the file path
+		 * @param index   to add to
+		 * @param queuer  the work queue running this task
+		 * @param options the crawl settings
+		 */
+		public Task(Path path, ThreadedInvertedIndex index, TaskQueue queuer, CrawlOptions options) {
 			this.path = path;
 			this.index = index;
+			this.queuer = queuer;
+			this.options = options;
 		}
 
 		@Override
@@ -104,15 +303,38 @@ public class ThreadedDirectoryStreamer {
 		 */
 		public void run() throws UncheckedIOException {
 			try {
-				InvertedIndex local = new InvertedIndex();
-				DirectoryStreamer.stemmer(path, local);
-				// System.out.println(local.getCountMap());
-				index.addAll(local);
+				if (queuer != null && queuer.hasComputePool()) {
+					// blocking reads stay on this thread, stemming goes to the bounded pool
+					if (options.isAsciiFastPath() || options.getDedupCache() != null) {
+						byte[] bytes = Files.readAllBytes(path);
+						queuer.compute(() -> stemmer(bytes));
+					} else {
+						List<String> lines = DirectoryStreamer.readLines(path);
+						queuer.compute(() -> DirectoryStreamer.stemLines(lines, path.toString(), index));
+					}
+					return;
+				}
+
+				// the whole file is added in one bulk call holding the write lock once
+				DirectoryStreamer.stemmer(path, index, options);
 
 			} catch (IOException e) {
 				// System.out.println("directory");
 				throw new UncheckedIOException(e);
 			}
 		}
+
+		/**
+		 * Stems the file from the bytes already read by this task.
+		 * 
+		 * @param bytes the bytes of the file
+		 */
+		private void stemmer(byte[] bytes) {
+			try {
+				DirectoryStreamer.stemmer(path, bytes, index, options);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -3,10 +3,14 @@ package edu.usfca.cs272;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * An index to store locations and the words found at those locations. Makes no
@@ -22,12 +26,60 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 	 */
 	private final ReadWriteLock lock;
 
+	/**
+	 * The number of words each search task adds up before it splits.
+	 */
+	public static final int SEARCH_SPLIT = 32;
+
+	/**
+	 * Pool used to add up the words of a single search in parallel, or null to
+	 * search on the calling thread.
+	 */
+	private volatile ForkJoinPool searchPool;
+
 	/**
 	 * constructor to construct the data structure.
 	 */
 	public ThreadedInvertedIndex() {
 		super();
 		lock = new ReadWriteLock();
+		searchPool = null;
+	}
+
+	/**
+	 * Sets the pool used to split the words of a single search across threads.
+	 * Searches with more than {@link #SEARCH_SPLIT} words are added up in ranges
+	 * of words by fork/join tasks, and the per location totals are merged.
+	 * 
+	 * @param searchPool the pool to search with, or null to search on the calling
+	 *                   thread
+	 */
+	public void setSearchPool(ForkJoinPool searchPool) {
+		this.searchPool = searchPool;
+	}
+
+	/**
+	 * Returns the pool used to split the words of a single search.
+	 * 
+	 * @return the search pool, or null if searches run on the calling thread
+	 */
+	public ForkJoinPool getSearchPool() {
+		return searchPool;
+	}
+
+	@Override
+	/**
+	 * Sets the expansion limit under the write lock.
+	 *
+	 * @param expansionLimit the expansion limit, or 0 for no limit
+	 */
+	public void setExpansionLimit(int expansionLimit) {
+		lock.write().lock();
+		try {
+			super.setExpansionLimit(expansionLimit);
+		} finally {
+			lock.write().unlock();
+		}
 	}
 
 	@Override
@@ -64,6 +116,69 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	/**
+	 * Adds the positions of every word in a single document, holding the write
+	 * lock once for the whole document.
+	 *
+	 * @param postings map of each word to its positions in the document
+	 * @param filePath the location of the document
+	 * @param count    the word count of the document
+	 */
+	public void addPostings(Map<String, ? extends Collection<Integer>> postings, String filePath, Integer count) {
+		lock.write().lock();
+		try {
+			super.addPostings(postings, filePath, count);
+		} finally {
+			lock.write().unlock();
+		}
+	}
+
+	@Override
+	/**
+	 * Adds the locations and positions of many words at once, holding the write
+	 * lock once for all of them.
+	 *
+	 * @param terms map of each word to its positions at each location
+	 */
+	public void addTerms(Map<String, TreeMap<String, TreeSet<Integer>>> terms) {
+		lock.write().lock();
+		try {
+			super.addTerms(terms);
+		} finally {
+			lock.write().unlock();
+		}
+	}
+
+	@Override
+	/**
+	 * Sets the word count of a location under the write lock.
+	 *
+	 * @param filePath the location
+	 * @param count    the word count of the location
+	 */
+	public void setCount(String filePath, int count) {
+		lock.write().lock();
+		try {
+			super.setCount(filePath, count);
+		} finally {
+			lock.write().unlock();
+		}
+	}
+
+	@Override
+	/**
+	 * Removes every word and its locations under the write lock.
+	 */
+	protected void clearWords() {
+		lock.write().lock();
+		try {
+			super.clearWords();
+		} finally {
+			lock.write().unlock();
+		}
+	}
+
 	@Override
 	/**
 	 * get count to return word count
@@ -218,6 +333,46 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 			lock.read().unlock();
 		}
 	}
+
+	@Override
+	/**
+	 * Writes the index in the given format under the read lock.
+	 */
+	public void writeIndex(Path path, OutputFormat format) throws IOException {
+		lock.read().lock();
+		try {
+			super.writeIndex(path, format);
+		} finally {
+			lock.read().unlock();
+		}
+	}
+
+	@Override
+	/**
+	 * Writes the word counts in the given format under the read lock.
+	 */
+	public void writeCounts(Path path, OutputFormat format) throws IOException {
+		lock.read().lock();
+		try {
+			super.writeCounts(path, format);
+		} finally {
+			lock.read().unlock();
+		}
+	}
+
+	@Override
+	/**
+	 * Writes the index in parallel chunks. The read lock is held until every
+	 * chunk is written, so the workers read the index without locking.
+	 */
+	public void mapJson(Path path, TaskQueue queuer) throws IOException {
+		lock.read().lock();
+		try {
+			super.mapJson(path, queuer);
+		} finally {
+			lock.read().unlock();
+		}
+	}
 	
 
 	@Override
@@ -272,31 +427,143 @@ public class ThreadedInvertedIndex extends InvertedIndex {
 	/**
 	 * Multi thread exact search
 	 * 
-	 * @param queries the set of quries to search
+	 * @param queries  the set of quries to search
+	 * @param deadline the time budget of the search
 	 */
-	public ArrayList<InvertedIndex.QuerySearchResults> exactSearch(TreeSet<String> queries) {
+	public ArrayList<InvertedIndex.QuerySearchResults> exactSearch(TreeSet<String> queries, Deadline deadline) {
 		lock.read().lock();
 		try {
-			return super.exactSearch(queries);
+			return super.exactSearch(queries, deadline);
 		} finally {
 			lock.read().unlock();
 		}
 	}
 
+	@Override
 	/**
 	 * Multi thread partial search
 	 * 
-	 * @param queries the set of quries to search
+	 * @param queries  the set of quries to search
+	 * @param deadline the time budget of the search
 	 */
-	public ArrayList<InvertedIndex.QuerySearchResults> partialSearch(TreeSet<String> queries) {
+	public ArrayList<InvertedIndex.QuerySearchResults> partialSearch(TreeSet<String> queries, Deadline deadline) {
 		lock.read().lock();
 		try {
-			return super.partialSearch(queries);
+			return super.partialSearch(queries, deadline);
 		} finally {
 			lock.read().unlock();
 		}
 	}
 
+	@Override
+	/**
+	 * Searches a block of queries together under a single read lock.
+	 * 
+	 * @param queries the stemmed queries to search
+	 * @param exact   the boolean to determine exact or partial search
+	 */
+	public List<ArrayList<InvertedIndex.QuerySearchResults>> searchBatch(List<TreeSet<String>> queries,
+			boolean exact) {
+		lock.read().lock();
+		try {
+			return super.searchBatch(queries, exact);
+		} finally {
+			lock.read().unlock();
+		}
+	}
+
+	@Override
+	/**
+	 * Adds up the words on the search pool when there are enough of them. Called
+	 * by the searches while they hold the read lock.
+	 */
+	protected SearchResults score(List<String> words, boolean truncated, Deadline deadline) {
+		ForkJoinPool pool = searchPool;
+		if (pool == null || words.size() <= SEARCH_SPLIT) {
+			return super.score(words, truncated, deadline);
+		}
+
+		SearchResults results = parallelSearch(pool, words, deadline);
+		results.setTruncated(truncated || deadline.isExpired());
+		return results;
+	}
+
+	/**
+	 * Adds up the words in parallel and ranks the merged totals. The caller holds
+	 * the read lock for the whole search, so the tasks read without locking.
+	 * 
+	 * @param pool     the pool to search with
+	 * @param words    the words to add up, including repeats
+	 * @param deadline the time budget shared by every task
+	 * @return the sorted search results
+	 */
+	private SearchResults parallelSearch(ForkJoinPool pool, List<String> words, Deadline deadline) {
+		ScoreAccumulator.Partial totals = pool.invoke(new SearchTask(words, 0, words.size(), deadline));
+		ScoreAccumulator scores = ScoreAccumulator.local(documentCount());
+		scores.addAll(totals);
+		return rank(scores);
+	}
+
+	/**
+	 * Task that adds up a range of words, splitting it in half until the range
+	 * is small enough. The totals of the left half come first, so documents stay
+	 * in the order a single thread would find them. Each thread adds up into its
+	 * own reusable accumulator.
+	 */
+	private class SearchTask extends RecursiveTask<ScoreAccumulator.Partial> {
+		/** Serial version id. */
+		private static final long serialVersionUID = 1L;
+
+		/** The words to add up. */
+		private final List<String> words;
+
+		/** The first word in the range. */
+		private final int start;
+
+		/** The end of the range, exclusive. */
+		private final int end;
+
+		/** The time budget of the search. */
+		private final Deadline deadline;
+
+		/**
+		 * Creates a task for a range of words.
+		 * 
+		 * @param words    the words to add up
+		 * @param start    the first word in the range
+		 * @param end      the end of the range, exclusive
+		 * @param deadline the time budget of the search
+		 */
+		private SearchTask(List<String> words, int start, int end, Deadline deadline) {
+			this.words = words;
+			this.start = start;
+			this.end = end;
+			this.deadline = deadline;
+		}
+
+		@Override
+		protected ScoreAccumulator.Partial compute() {
+			if (end - start <= SEARCH_SPLIT) {
+				ScoreAccumulator scores = ScoreAccumulator.local(documentCount());
+				accumulate(words, start, end, scores, deadline);
+				return scores.drain();
+			}
+
+			int middle = (start + end) >>> 1;
+			SearchTask left = new SearchTask(words, start, middle, deadline);
+			left.fork();
+
+			ScoreAccumulator.Partial right = new SearchTask(words, middle, end, deadline).compute();
+			ScoreAccumulator.Partial first = left.join();
+
+			// no other task uses this thread's accumulator once both halves are done
+			ScoreAccumulator scores = ScoreAccumulator.local(documentCount());
+			scores.addAll(first);
+			scores.addAll(right);
+			return scores.drain();
+		}
+	}
+
 	@Override
 	/**
 	 * to string 
@@ -1,8 +1,12 @@
 package edu.usfca.cs272;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -13,6 +17,22 @@ import java.util.TreeSet;
  *
  */
 public class ThreadedQuery implements QueryInterface {
+	/**
+	 * default time each chunk of query lines should take to search, in
+	 * nanoseconds
+	 */
+	public static final long DEFAULT_CHUNK_TARGET = 1_000_000;
+
+	/**
+	 * most query lines in a single chunk
+	 */
+	private static final int MAX_CHUNK = 4096;
+
+	/**
+	 * weight of the newest chunk in the moving average of the line cost
+	 */
+	private static final double ALPHA = 0.25;
+
 	/**
 	 * for storing query search results + file path
 	 */
@@ -26,7 +46,24 @@ public class ThreadedQuery implements QueryInterface {
 	/**
 	 * workqueue member is used for multithreading
 	 */
-	private final WorkQueue queuer;
+	private final TaskQueue queuer;
+
+	/**
+	 * time each chunk of query lines should take to search in nanoseconds, or 0 to
+	 * submit each line as its own task
+	 */
+	private long chunkTarget;
+
+	/**
+	 * moving average of the time to search a single line in nanoseconds, or 0
+	 * before any chunk is measured
+	 */
+	private double lineCost;
+
+	/**
+	 * number of chunks submitted before any chunk was measured
+	 */
+	private int unmeasured;
 
 	/**
 	 * constructor for class
@@ -34,10 +71,49 @@ public class ThreadedQuery implements QueryInterface {
 	 * @param index  the threaded Inverted Index class
 	 * @param queuer the workqueue to execute
 	 */
-	public ThreadedQuery(ThreadedInvertedIndex index, WorkQueue queuer) {
+	public ThreadedQuery(ThreadedInvertedIndex index, TaskQueue queuer) {
 		querySR = new TreeMap<String, ArrayList<InvertedIndex.QuerySearchResults>>();
 		this.index = index;
 		this.queuer = queuer;
+		this.chunkTarget = DEFAULT_CHUNK_TARGET;
+		this.lineCost = 0;
+		this.unmeasured = 0;
+	}
+
+	/**
+	 * Sets how long each chunk of query lines read from a file should take to
+	 * search. Chunks grow or shrink as the measured cost per line changes, so
+	 * cheap queries do not pay the queue overhead once each.
+	 * 
+	 * @param chunkTarget the target time per chunk in nanoseconds, or 0 to submit
+	 *                    each line as its own task
+	 */
+	public synchronized void setChunkTarget(long chunkTarget) {
+		this.chunkTarget = Math.max(0, chunkTarget);
+	}
+
+	/**
+	 * Returns how many lines the next chunk should have. Until a chunk has been
+	 * measured, chunks start at one line and double in size.
+	 * 
+	 * @return the number of lines
+	 */
+	private synchronized int chunkSize() {
+		if (lineCost == 0) {
+			return 1 << Math.min(unmeasured++, 12);
+		}
+		return (int) Math.max(1, Math.min(MAX_CHUNK, Math.round(chunkTarget / lineCost)));
+	}
+
+	/**
+	 * Adds the measured time of a chunk to the moving average of the line cost.
+	 * 
+	 * @param elapsed the time to search the chunk in nanoseconds
+	 * @param lines   the number of lines in the chunk
+	 */
+	private synchronized void measured(long elapsed, int lines) {
+		double cost = Math.max(1, (double) elapsed / lines);
+		lineCost = lineCost == 0 ? cost : lineCost + ALPHA * (cost - lineCost);
 	}
 
 	@Override
@@ -50,10 +126,56 @@ public class ThreadedQuery implements QueryInterface {
 	 *                     the file
 	 */
 	public void queryProcessor(Path path, boolean exact) throws IOException {
-		QueryInterface.super.queryProcessor(path, exact);
+		long target;
+		synchronized (this) {
+			target = chunkTarget;
+		}
+
+		if (target <= 0) {
+			QueryInterface.super.queryProcessor(path, exact);
+			this.queuer.finish();
+			return;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(path)) {
+			List<String> chunk = new ArrayList<>();
+			int size = chunkSize();
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				chunk.add(line);
+
+				if (chunk.size() >= size) {
+					queuer.execute(new ChunkTask(chunk, exact));
+					chunk = new ArrayList<>();
+					size = chunkSize();
+				}
+			}
+
+			if (!chunk.isEmpty()) {
+				queuer.execute(new ChunkTask(chunk, exact));
+			}
+		}
+		this.queuer.finish();
+	}
+
+	@Override
+	/**
+	 * the method to process blocks of lines in the query text file.
+	 */
+	public void queryProcessor(Path path, boolean exact, int batch) throws IOException {
+		QueryInterface.super.queryProcessor(path, exact, batch);
 		this.queuer.finish();
 	}
 
+	@Override
+	/**
+	 * the query processor to execute run for a block of lines
+	 */
+	public void queryProcessor(List<String> lines, boolean exact) {
+		queuer.execute(new BatchTask(lines, exact));
+	}
+
 	@Override
 	/**
 	 * the query processor to execute run
@@ -68,7 +190,22 @@ public class ThreadedQuery implements QueryInterface {
 	 */
 	public void resultsJson(Path path) throws IOException {
 		synchronized (querySR) {
-			JsonWriter.writeSearch(this.querySR, path);
+			FastJsonWriter.writeSearch(this.querySR, path);
+		}
+	}
+
+	@Override
+	/**
+	 * to output map in the given format
+	 */
+	public void writeResults(Path path, OutputFormat format) throws IOException {
+		if (format == OutputFormat.JSON) {
+			resultsJson(path);
+			return;
+		}
+
+		synchronized (querySR) {
+			RecordWriter.writeResults(this.querySR, path, format);
 		}
 	}
 
@@ -108,27 +245,147 @@ public class ThreadedQuery implements QueryInterface {
 		 * the run method to execute with queuer
 		 */
 		public void run() {
-			TreeSet<String> stemmedLine = WordCleaner.uniqueStems(line);
+			queuer.compute(this::search);
+		}
 
-			if (!stemmedLine.isEmpty()) {
-				String joined = String.join(" ", stemmedLine);
+		/**
+		 * stems the line and stores its search results, the CPU-bound part of the
+		 * task
+		 */
+		private void search() {
+			searchLine(line, exact);
+		}
 
-				synchronized (querySR) {
-					if (querySR.containsKey(joined)) {
-						return;
-					}
-				}
+	}
 
-				var local = index.search(stemmedLine, exact);
+	/**
+	 * stems a line and stores its search results unless the query was already
+	 * searched
+	 * 
+	 * @param line  the line to parse
+	 * @param exact the boolean to see if we are doing exact search or not
+	 */
+	private void searchLine(String line, boolean exact) {
+		TreeSet<String> stemmedLine = WordCleaner.uniqueStems(line);
 
-				// System.out.println("joined: " + joined);
-				// System.out.println("local: " + local);
+		if (!stemmedLine.isEmpty()) {
+			String joined = String.join(" ", stemmedLine);
 
-				synchronized (querySR) {
-					querySR.put(joined, local);
+			synchronized (querySR) {
+				if (querySR.containsKey(joined)) {
+					return;
 				}
 			}
+
+			var local = index.search(stemmedLine, exact);
+
+			synchronized (querySR) {
+				querySR.put(joined, local);
+			}
+		}
+	}
+
+	/**
+	 * task class to search a chunk of lines one after another and measure how
+	 * long they took
+	 */
+	public class ChunkTask implements Runnable {
+		/**
+		 * the lines to parse
+		 */
+		private final List<String> lines;
+
+		/**
+		 * boolean to determine search type
+		 */
+		private final boolean exact;
+
+		/**
+		 * constructor declaration
+		 * 
+		 * @param lines the lines to parse from
+		 * @param exact the boolean to see if we are doing exact search or not
+		 */
+		public ChunkTask(List<String> lines, boolean exact) {
+			this.lines = lines;
+			this.exact = exact;
+		}
+
+		@Override
+		/**
+		 * the run method to execute with queuer
+		 */
+		public void run() {
+			queuer.compute(this::search);
+		}
+
+		/**
+		 * searches every line and records the time per line
+		 */
+		private void search() {
+			long start = System.nanoTime();
+			for (String line : lines) {
+				searchLine(line, exact);
+			}
+			measured(System.nanoTime() - start, lines.size());
+		}
+	}
+
+	/**
+	 * task class to stem a block of lines and search the new queries together
+	 */
+	public class BatchTask implements Runnable {
+		/**
+		 * the lines to parse
+		 */
+		private final List<String> lines;
+
+		/**
+		 * boolean to determine search type
+		 */
+		private final boolean exact;
+
+		/**
+		 * constructor declaration
+		 * 
+		 * @param lines the lines to parse from
+		 * @param exact the boolean to see if we are doing exact search or not
+		 */
+		public BatchTask(List<String> lines, boolean exact) {
+			this.lines = lines;
+			this.exact = exact;
 		}
 
+		@Override
+		/**
+		 * the run method to execute with queuer
+		 */
+		public void run() {
+			queuer.compute(this::search);
+		}
+
+		/**
+		 * stems the lines and stores the search results of the new queries
+		 */
+		private void search() {
+			LinkedHashMap<String, TreeSet<String>> queries = QueryInterface.uniqueQueries(lines);
+
+			synchronized (querySR) {
+				queries.keySet().removeAll(querySR.keySet());
+			}
+
+			if (queries.isEmpty()) {
+				return;
+			}
+
+			var found = index.searchBatch(new ArrayList<>(queries.values()), exact);
+
+			synchronized (querySR) {
+				int i = 0;
+				for (String joined : queries.keySet()) {
+					querySR.put(joined, found.get(i++));
+				}
+			}
+		}
 	}
 }
@@ -0,0 +1,228 @@
+package edu.usfca.cs272;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A work queue for I/O-bound crawling and querying. Every task runs on its own
+ * virtual thread, so tasks blocked reading from slow storage do not hold up
+ * other tasks, while CPU-bound work handed to {@link #compute(Runnable)} runs
+ * on a separate fixed pool sized like a normal work queue. The
+ * {@link #finish()}, {@link #shutdown()} and {@link #join()} methods keep the
+ * same meaning as in {@link WorkQueue}.
+ *
+ * At most {@link #TASKS_PER_THREAD} tasks per CPU thread run at once, so tasks
+ * that read whole files before handing them to the CPU pool only hold a bounded
+ * number of files in memory. Tasks waiting for their turn block cheaply on
+ * their virtual thread.
+ *
+ * Virtual threads are looked up at runtime. On a Java runtime without them, a
+ * fixed pool with one platform thread per task that may run at once is used
+ * instead.
+ *
+ * @author Jadon Huang
+ */
+public class VirtualWorkQueue implements TaskQueue {
+	/** Number of tasks that may run at once for each CPU thread. */
+	public static final int TASKS_PER_THREAD = 4;
+
+	/** Runs each task on its own (ideally virtual) thread. */
+	private final ExecutorService tasks;
+
+	/** Bounded pool for CPU-bound work such as stemming and merging. */
+	private final ExecutorService workers;
+
+	/** Number of threads in the CPU pool. */
+	private final int threads;
+
+	/** Limits the number of tasks running at once. */
+	private final Semaphore running;
+
+	/** Used to signal that no more tasks should be started. */
+	private volatile boolean shutdown;
+
+	/** Number of tasks that have been added but not finished. */
+	private int pending;
+
+	/** Logger used for this class. */
+	private static final Logger log = LogManager.getLogger();
+
+	/**
+	 * Starts a virtual thread work queue with the default number of CPU threads.
+	 */
+	public VirtualWorkQueue() {
+		this(WorkQueue.DEFAULT);
+	}
+
+	/**
+	 * Starts a virtual thread work queue with the specified number of CPU threads.
+	 *
+	 * @param threads number of threads for CPU-bound work
+	 */
+	public VirtualWorkQueue(int threads) {
+		this.threads = Math.max(1, threads);
+		this.running = new Semaphore(this.threads * TASKS_PER_THREAD);
+		this.tasks = newTaskExecutor(this.threads * TASKS_PER_THREAD);
+		this.workers = Executors.newFixedThreadPool(this.threads);
+		this.shutdown = false;
+		this.pending = 0;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task, falling
+	 * back to a fixed thread pool when virtual threads are not available.
+	 *
+	 * @param fallback the number of platform threads to use without virtual
+	 *                 threads
+	 * @return the executor for tasks
+	 */
+	private static ExecutorService newTaskExecutor(int fallback) {
+		try {
+			Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			log.debug("Work queue using virtual threads.");
+			return (ExecutorService) executor;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			log.debug("Virtual threads unavailable, using a fixed thread pool.");
+			return Executors.newFixedThreadPool(fallback);
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		increment();
+
+		try {
+			tasks.execute(() -> {
+				boolean acquired = false;
+
+				try {
+					running.acquire();
+					acquired = true;
+
+					if (!shutdown) {
+						task.run();
+					}
+				} catch (InterruptedException e) {
+					log.debug("Interrupted before the task started");
+					Thread.currentThread().interrupt();
+				} catch (RuntimeException e) {
+					// catch runtime exceptions to match the platform worker threads
+					System.err.printf("Warning: Thread %s encountered an exception while running.%n",
+							Thread.currentThread().getName());
+					log.catching(Level.DEBUG, e);
+				} finally {
+					if (acquired) {
+						running.release();
+					}
+					decrement();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			log.debug("Task added after shutdown was ignored.");
+			decrement();
+		}
+	}
+
+	/**
+	 * Runs the CPU-bound work on the bounded pool and waits for it to finish.
+	 * Waiting is cheap since the calling task is normally on a virtual thread.
+	 *
+	 * @param work the CPU-bound work to run
+	 */
+	@Override
+	public void compute(Runnable work) {
+		Future<?> future = workers.submit(work);
+
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			future.cancel(false);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public boolean hasComputePool() {
+		return true;
+	}
+
+	/**
+	 * increment operation
+	 */
+	private synchronized void increment() {
+		pending++;
+	}
+
+	/**
+	 * decrement operation
+	 */
+	private synchronized void decrement() {
+		assert pending > 0;
+		pending--;
+		if (pending == 0) {
+			this.notifyAll();
+		}
+	}
+
+	@Override
+	public synchronized void finish() {
+		log.debug("waiting for work");
+		while (pending > 0) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				log.debug("Interrupted");
+			}
+		}
+		log.debug("finished work");
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		log.debug("Work queue triggering shutdown...");
+		tasks.shutdown();
+		workers.shutdown();
+	}
+
+	@Override
+	public void join() {
+		try {
+			finish();
+			shutdown();
+
+			tasks.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+			log.debug("All threads terminated.");
+		} catch (InterruptedException e) {
+			System.err.println("Warning: Work queue interrupted while joining.");
+			log.catching(Level.DEBUG, e);
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of threads available for CPU-bound work.
+	 *
+	 * @return number of CPU threads
+	 */
+	@Override
+	public int size() {
+		return threads;
+	}
+}
@@ -1,7 +1,5 @@
 package edu.usfca.cs272;
 
-import static opennlp.tools.stemmer.snowball.SnowballStemmer.ALGORITHM.ENGLISH;
-
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -110,18 +108,17 @@ public class WordCleaner {
 	}
 
 	/**
-	 * Parses the line into a list of cleaned and stemmed words using the default
-	 * stemmer for English.
+	 * Parses the line into a list of cleaned and stemmed words using the cached
+	 * default stemmer for English of the current thread.
 	 *
 	 * @param line the line of words to parse and stem
 	 * @return a list of cleaned and stemmed words in parsed order
 	 *
-	 * @see SnowballStemmer#SnowballStemmer(ALGORITHM)
-	 * @see ALGORITHM#ENGLISH
+	 * @see StemCache#local()
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static ArrayList<String> listStems(String line) {
-		return listStems(line, new SnowballStemmer(ENGLISH));
+		return listStems(line, StemCache.local());
 	}
 
 	/**
@@ -170,17 +167,16 @@ public class WordCleaner {
 
 	/**
 	 * Parses the line into a set of unique, sorted, cleaned, and stemmed words
-	 * using the default stemmer for English.
+	 * using the cached default stemmer for English of the current thread.
 	 *
 	 * @param line the line of words to parse and stem
 	 * @return a sorted set of unique cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer#SnowballStemmer(ALGORITHM)
-	 * @see ALGORITHM#ENGLISH
+	 * @see StemCache#local()
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static TreeSet<String> uniqueStems(String line) {
-		return uniqueStems(line, new SnowballStemmer(ENGLISH));
+		return uniqueStems(line, StemCache.local());
 	}
 
 	/**
@@ -17,7 +17,7 @@ import org.apache.logging.log4j.Logger;
  * @author CS 272 Software Development (University of San Francisco)
  * @version Fall 2022
  */
-public class WorkQueue {
+public class WorkQueue implements TaskQueue {
 
 	/** Workers that wait until work (or tasks) are available. */
 	private Worker[] workers;
@@ -75,6 +75,7 @@ public class WorkQueue {
 	 *
 	 * @param task work request (in the form of a {@link Runnable} object)
 	 */
+	@Override
 	public void execute(Runnable task) {
 		increment();
 		synchronized (tasks) {
@@ -105,6 +106,7 @@ public class WorkQueue {
 	 * Waits for all pending work (or tasks) to be finished. Does not terminate the
 	 * worker threads so that the work queue can continue to be used.
 	 */
+	@Override
 	public synchronized void finish() {
 		log.debug("waiting for work");
 		while (pending > 0) {
@@ -121,6 +123,7 @@ public class WorkQueue {
 	 * Asks the queue to shutdown. Any unprocessed work (or tasks) will not be
 	 * finished, but threads in-progress will not be interrupted.
 	 */
+	@Override
 	public void shutdown() {
 		// safe to do unsynchronized due to volatile keyword
 		shutdown = true;
@@ -136,6 +139,7 @@ public class WorkQueue {
 	 * the worker threads to terminate. The work queue cannot be reused after this
 	 * call completes.
 	 */
+	@Override
 	public void join() {
 		try {
 			finish();
@@ -158,6 +162,7 @@ public class WorkQueue {
 	 *
 	 * @return number of worker threads
 	 */
+	@Override
 	public int size() {
 		return workers.length;
 	}